@@ -1,6 +1,9 @@
 package com.example.pdac_assignment;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
 
 import androidx.test.platform.app.InstrumentationRegistry;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -11,9 +14,16 @@ import org.junit.runner.RunWith;
 import static org.junit.Assert.*;
 
 import com.example.pdac_assignment.Utils.Histogram;
+import com.example.pdac_assignment.Utils.Utils;
+import com.example.pdac_assignment.core.Quantization;
+import com.example.pdac_assignment.core.RegionOfInterest;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Instrumented test, which will execute on an Android device.
@@ -60,6 +70,154 @@ public class ExampleInstrumentedTest {
         testHistogram_accuracy("test_landscape.jpg");
     }
 
+    /**
+     * Same image as testHistogram_landscape1, quantized bins are stable across scaling factors
+     * unlike exact 24 bit colors
+     * @throws IOException
+     */
+    @Test
+    public void testHistogram_landscape1_quantized() throws IOException {
+        testHistogram_accuracy("test_landscape.jpg", Quantization.RGB444);
+    }
+
+    /**
+     * Same image as testHistogram_landscape1, sampling keeps the full resolution colors
+     * so the top colors are the exact ones within estimated share errors
+     * @throws IOException
+     */
+    @Test
+    public void testHistogram_landscape1_sampled() throws IOException {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getContext();
+        Histogram exact = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                ,new Histogram.ConfigBuilder().setScaleBy(1).build());
+        Histogram sampled = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                ,new Histogram.ConfigBuilder().setSampling(4).build());
+        List<Histogram.Color> expected = Arrays.asList(exact.getTopColors(6));
+        for(Histogram.Color color : sampled.getTopColors(5)) {
+            int index = expected.indexOf(color);
+            assertTrue(index >= 0);
+            assertEquals(exact.getColorShare(expected.get(index)), sampled.getColorShare(color), 2 * sampled.getColorShareError(color) + 0.001F);
+        }
+    }
+
+    /**
+     * Same image as testHistogram_landscape1 counted by the octree, all the pixels are represented
+     * by no more colors than the leaves budget
+     * @throws IOException
+     */
+    @Test
+    public void testHistogram_landscape1_octree() throws IOException {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getContext();
+        Histogram exact = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                ,new Histogram.ConfigBuilder().setScaleBy(1).build());
+        Histogram octree = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                ,new Histogram.ConfigBuilder().setScaleBy(1).setOctree(64).build());
+        assertTrue(octree.getSortedColors().length <= 64);
+        assertEquals(exact.getTotalColorsCount(), octree.getTotalColorsCount());
+        float share = 0;
+        for(Histogram.Color color : octree.getSortedColors())
+            share += octree.getColorShare(color);
+        assertEquals(100F, share, 0.1F);
+    }
+
+    /**
+     * Testing that frames decoded into the pooled bitmap (including a smaller frame after a larger one)
+     * give the same histograms as freshly decoded ones (streams that can not be reset included),
+     * and that RGB_565 decoding keeps quantized top colors
+     * @throws IOException
+     */
+    @Test
+    public void testHistogram_bitmapReuse() throws IOException {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getContext();
+        for(String fileName : new String[]{"test_landscape.jpg", "test_redish_image.jpg", "test_landscape2.jpg"})
+            for(int scaleBy : new int[]{1, 4}) {
+                Histogram expected = Histogram.instantiateHistogram(appContext.getAssets().open(fileName)
+                        ,new Histogram.ConfigBuilder().setScaleBy(scaleBy).build());
+                Histogram reused = Histogram.instantiateHistogram(new UnmarkableInputStream(appContext.getAssets().open(fileName))
+                        ,new Histogram.ConfigBuilder().setScaleBy(scaleBy).setBitmapReuse(true).build());
+                assertEquals(expected.getTotalColorsCount(), reused.getTotalColorsCount());
+                assertArrayEquals(expected.getTopColors(5), reused.getTopColors(5));
+            }
+
+        Histogram quantized = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                ,new Histogram.ConfigBuilder().setScaleBy(4).setQuantization(Quantization.RGB444).build());
+        Histogram rgb565 = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                ,new Histogram.ConfigBuilder().setScaleBy(4).setQuantization(Quantization.RGB444)
+                        .setDecodeRgb565(true).setBitmapReuse(true).build());
+        assertEquals(quantized.getTotalColorsCount(), rgb565.getTotalColorsCount());
+        List<Histogram.Color> expected = Arrays.asList(quantized.getTopColors(6));
+        for(Histogram.Color color : rgb565.getTopColors(3))
+            assertTrue(expected.contains(color));
+    }
+
+    /**
+     * Testing that only the region of interest of encoded image is decoded and counted,
+     * with and without the pooled decoding bitmap
+     * @throws IOException
+     */
+    @Test
+    public void testHistogram_regionOfInterest() throws IOException {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getContext();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(appContext.getAssets().open("test_landscape.jpg"), null, options);
+        RegionOfInterest center = new RegionOfInterest(0.25F, 0.25F, 0.75F, 0.75F);
+        Histogram region = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                ,new Histogram.ConfigBuilder().setScaleBy(4).setRegionOfInterest(center, false).build());
+        int regionWidth = (int) Math.ceil(options.outWidth * 0.75) - (int) Math.floor(options.outWidth * 0.25);
+        int regionHeight = (int) Math.ceil(options.outHeight * 0.75) - (int) Math.floor(options.outHeight * 0.25);
+        assertEquals((regionWidth / 4) * (regionHeight / 4), region.getTotalColorsCount());
+        for(int i = 0; i < 2; i++) {
+            Histogram reused = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                    ,new Histogram.ConfigBuilder().setScaleBy(4).setRegionOfInterest(center, false).setBitmapReuse(true).build());
+            assertEquals(region.getTotalColorsCount(), reused.getTotalColorsCount());
+            assertArrayEquals(region.getTopColors(5), reused.getTopColors(5));
+        }
+
+        Histogram ellipse = Histogram.instantiateHistogram(appContext.getAssets().open("test_solid_color.jpg")
+                ,new Histogram.ConfigBuilder().setMaxBoundary(128).setRegionOfInterest(center, true).build());
+        assertEquals(1, ellipse.getSortedColors().length);
+    }
+
+    /**
+     * Testing that strip by strip decoding of a stream that can not be reset counts the same pixels
+     * as decoding of the whole image
+     * @throws IOException
+     */
+    @Test
+    public void testHistogram_stripStreaming() throws IOException {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getContext();
+        for(int scaleBy : new int[]{1, 4}) {
+            Histogram whole = Histogram.instantiateHistogram(appContext.getAssets().open("test_landscape.jpg")
+                    ,new Histogram.ConfigBuilder().setScaleBy(scaleBy).setQuantization(Quantization.RGB444).build());
+            Histogram strips = Histogram.instantiateHistogram(new UnmarkableInputStream(appContext.getAssets().open("test_landscape.jpg"))
+                    ,new Histogram.ConfigBuilder().setScaleBy(scaleBy).setQuantization(Quantization.RGB444)
+                            .setStripStreaming(Histogram.DEFAULT_STRIP_ROWS).build());
+            //Region decoder may round the sampled size down, a row and a column at most
+            assertEquals(whole.getTotalColorsCount(), strips.getTotalColorsCount(), whole.getTotalColorsCount() / 100F);
+            List<Histogram.Color> expected = Arrays.asList(whole.getTopColors(6));
+            for(Histogram.Color color : strips.getTopColors(3))
+                assertTrue(expected.contains(color));
+        }
+    }
+
+    // Stream that supports neither mark nor reset, as a network stream
+    private static class UnmarkableInputStream extends FilterInputStream {
+        UnmarkableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("Reset is not supported");
+        }
+    }
+
     /**
      * Testing Histogram generation with complicated not balanced color distribution
      * (see testHistogram_accuracy for remarks)
@@ -84,15 +242,21 @@ public class ExampleInstrumentedTest {
      * @throws IOException
      */
     public void testHistogram_accuracy(String fileName) throws IOException {
+        testHistogram_accuracy(fileName, null);
+    }
+
+    public void testHistogram_accuracy(String fileName, Quantization quantization) throws IOException {
         Context appContext = InstrumentationRegistry.getInstrumentation().getContext();
         Histogram p = Histogram.instantiateHistogram(appContext.getAssets().open(fileName)
                 ,new Histogram.ConfigBuilder()
                     .setScaleBy(1)
+                    .setQuantization(quantization)
                 .build()
         );
         Histogram p2 = Histogram.instantiateHistogram(appContext.getAssets().open(fileName)
                 ,new Histogram.ConfigBuilder()
                         .setScaleBy(4)
+                        .setQuantization(quantization)
                         .build());
         HashSet<Histogram.Color> hashSet = new HashSet<>();
         for(int i = 0; i < 6; i++)
@@ -101,4 +265,75 @@ public class ExampleInstrumentedTest {
             assertTrue(hashSet.contains(p2.getSortedColors()[i]));
     }
 
+    /**
+     * Testing that histogram read directly from NV21 frame matches the JPEG round trip path
+     * that was used by CameraActivity before
+     * @throws IOException
+     */
+    @Test
+    public void testYuvHistogram_assets() throws IOException {
+        testYuvHistogram_matchesJpegPath("test_solid_color.jpg");
+        testYuvHistogram_matchesJpegPath("test_redish_image.jpg");
+        testYuvHistogram_matchesJpegPath("test_landscape2.jpg");
+    }
+
+    /**
+     * Helper function, the frame is converted into NV21 and counted both ways.
+     * JPEG encoding is lossy, so colors are matched with small per channel tolerance
+     * @param fileName
+     * @throws IOException
+     */
+    public void testYuvHistogram_matchesJpegPath(String fileName) throws IOException {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getContext();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 4;
+        Bitmap bitmap = BitmapFactory.decodeStream(appContext.getAssets().open(fileName), null, options);
+        int width = bitmap.getWidth() & ~1;
+        int height = bitmap.getHeight() & ~1;
+        byte[] nv21 = toNV21(bitmap, width, height);
+        bitmap.recycle();
+
+        byte[] jpeg = Utils.convertYuvToJpeg(nv21, ImageFormat.NV21, width, height);
+        Histogram expected = Histogram.instantiateHistogram(jpeg, 0, jpeg.length,
+                new Histogram.ConfigBuilder().setScaleBy(1).build());
+        Histogram actual = Histogram.instantiateHistogramFromYuv(nv21, ImageFormat.NV21, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).build());
+
+        assertEquals(expected.getTotalColorsCount(), actual.getTotalColorsCount());
+        Histogram.Color[] expectedColors = expected.getSortedColors();
+        Histogram.Color[] actualColors = actual.getSortedColors();
+        for(int i = 0; i < 5 && i < actualColors.length; i++) {
+            boolean found = false;
+            for(int j = 0; j < 10 && j < expectedColors.length && !found; j++)
+                found = isSimilarColor(actualColors[i].color, expectedColors[j].color, 6);
+            assertTrue(fileName + " color " + actualColors[i] + " is missing", found);
+        }
+    }
+
+    private static boolean isSimilarColor(int color, int color2, int tolerance){
+        for(int shift = 0; shift < 24; shift += 8)
+            if(Math.abs(((color >> shift) & 0xff) - ((color2 >> shift) & 0xff)) > tolerance)
+                return false;
+        return true;
+    }
+
+    // Helper function, full range BT.601 ARGB -> NV21 conversion
+    private static byte[] toNV21(Bitmap bitmap, int width, int height){
+        int[] argb = new int[width * height];
+        bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++) {
+                int c = argb[y * width + x];
+                int r = (c >> 16) & 0xff, g = (c >> 8) & 0xff, b = c & 0xff;
+                nv21[y * width + x] = (byte) Math.round(0.299 * r + 0.587 * g + 0.114 * b);
+                if((x & 1) == 0 && (y & 1) == 0) {
+                    int uv = width * height + (y / 2) * width + x;
+                    nv21[uv] = (byte) Math.max(0, Math.min(255, Math.round(128 + 0.5 * r - 0.418688 * g - 0.081312 * b)));
+                    nv21[uv + 1] = (byte) Math.max(0, Math.min(255, Math.round(128 - 0.168736 * r - 0.331264 * g + 0.5 * b)));
+                }
+            }
+        return nv21;
+    }
+
 }
\ No newline at end of file
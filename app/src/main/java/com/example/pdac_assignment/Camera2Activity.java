@@ -31,16 +31,18 @@ import android.util.Size;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
+import android.view.View;
 import android.widget.FrameLayout;
-import android.widget.ImageView;
+import android.widget.TextView;
 
+import com.example.pdac_assignment.Utils.AdaptiveScaleController;
+import com.example.pdac_assignment.Utils.FramePipeline;
 import com.example.pdac_assignment.Utils.Histogram;
+import com.example.pdac_assignment.Utils.PipelineMetrics;
+import com.example.pdac_assignment.Utils.TemporalHistogram;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.Callback{
     private static final String TAG = "Camera2Activity";
@@ -49,19 +51,38 @@ public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.
     //Capture camera session reference
     CameraCaptureSession mCaptureSession = null;
 
-    //Check image used to test the received data from ImageReader
-    private ImageView mCheckImage = null;
-
-    // Helper class array for color set representation
-    private ColorBoxViewHolder [] mColorHolders = new ColorBoxViewHolder[5];
+    // Debug overlay of the pipeline metrics
+    private TextView mMetricsOverlay = null;
+    // Per stage latency of the frames processing
+    private final PipelineMetrics mPipelineMetrics = new PipelineMetrics();
+    // Pipeline metrics overlay is shown in debug builds
+    private final static boolean SHOW_PIPELINE_METRICS = BuildConfig.DEBUG;
+    // Metrics overlay is refreshed at most every this many nanoseconds, each refresh relayouts it
+    private final static long METRICS_REFRESH_NANOS = 500000000L;
+    // Last metrics overlay refresh time and its reused text buffer
+    private long mMetricsRefreshNanos = 0;
+    private final char[] mMetricsText = new char[PipelineMetrics.FORMAT_CAPACITY];
+
+    // Color set representation, the most popular colors are drawn by a single view
+    private ColorBoxesView mColorBoxes = null;
     // Observable that holds processed data histogram collected for representation
     final MutableLiveData<Histogram> mExecutionData = new MutableLiveData<>();
 
     // Initial image scaling value to give a better user experience
     private final static int INITIAL_SCALING_BY = 4;
-    // Blocking array of that holds an awaiting image data for further processing
-    private ArrayBlockingQueue<ExecutionContent> mImageDataBlockingArray = new ArrayBlockingQueue<ExecutionContent>(1);
-    private ExecutorService mExecutor = null;
+    // The coarsest scaling value the frames are processed with under load
+    private final static int MAX_SCALING_BY = 64;
+    // Frame processing time budget the scaling value is adapted to
+    private final static long TARGET_FRAME_MILLIS = 66;
+    // Frames counting workers, each counting frame holds its image
+    private final static int COUNT_WORKERS = 2;
+    // Histogram pixels are counted on all the available cores, shared by the counting workers:
+    // their jobs run on the same pool at once, every job merges its own worker counters
+    private final static int HISTOGRAM_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() / COUNT_WORKERS);
+    // Share of the accumulated colors counts kept with each new frame
+    private final static float TEMPORAL_DECAY = 0.7F;
+    // Frames pipeline: counting workers, then a single worker folding counted frames into running counts
+    private FramePipeline<ExecutionContent> mFramePipeline = null;
 
     //Frame that holds the surface view
     private FrameLayout mSurfaceFrame = null;
@@ -126,6 +147,10 @@ public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.
 
     //ImageReader size is adjusted to maximum size limit divided by scaling factor (see androidTest)
     private final static int MAX_IMAGE_SIZE_BOUNDARY = 1920/Histogram.DEFAULT_SCALING_FACTOR;
+    //Analysis stream format, YUV_420_888 planes are counted in place while JPEG images are copied and decoded
+    private final static int ANALYSIS_IMAGE_FORMAT = ImageFormat.YUV_420_888;
+    //YUV images are held by the counting workers and the pipeline mailbox while the next one is acquired
+    private final static int ANALYSIS_MAX_IMAGES = COUNT_WORKERS + 2;
     //The reader on which camera api draws to surface for further processing
     private ImageReader mImageReader;
 
@@ -134,13 +159,11 @@ public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         mSurfaceFrame = findViewById(R.id.main_camera_preview);
-        mCheckImage = findViewById(R.id.main_image_check);
+        mMetricsOverlay = findViewById(R.id.main_metrics_overlay);
+        mMetricsOverlay.setVisibility(SHOW_PIPELINE_METRICS ? View.VISIBLE : View.GONE);
 
-        mColorHolders[0] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_0));
-        mColorHolders[1] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_1));
-        mColorHolders[2] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_2));
-        mColorHolders[3] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_3));
-        mColorHolders[4] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_4));
+        mColorBoxes = findViewById(R.id.main_camera_colorboxes);
+        mColorBoxes.setOnAppliedListener(this::onColorBoxesApplied);
 
         //In case there is no camera feature available there is no reason for further processing
         if(!getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA_ANY)) {
@@ -159,32 +182,9 @@ public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.
         //Camera session thread initialization
         (mCameraSessionHandlerThread = initializeCameraSessionHandlerThread()).start();
 
-        //Histogram calculation thread initialization
-        mExecutor = Executors.newSingleThreadExecutor();
-        //Execution of histogram calculation thread
-        mExecutor.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    int scaleBy = INITIAL_SCALING_BY;
-                    while (true) {
-                        ExecutionContent content = mImageDataBlockingArray.take();
-                        final Histogram histogram = Histogram.instantiateHistogram(content.bytes, 0, content.bytes.length,
-                                new Histogram.ConfigBuilder()
-                                        .setScaleBy(scaleBy)
-                                        .build());
-                        //upscaling the factor to 1 with each cycle
-                        if(scaleBy > 1)
-                            scaleBy /=2;
-                        mExecutionData.postValue(histogram);
-                    }
-
-                } catch (InterruptedException e) {
-                    Log.d(TAG,"Executing interrupted",e);
-                    e.printStackTrace();
-                }
-            }
-        });
+        //Histogram calculation threads initialization
+        mFramePipeline = createFramePipeline();
+        mFramePipeline.start();
         openCamera();
     }
 
@@ -194,10 +194,85 @@ public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.
         if(mSurfaceHolder != null)
             mSurfaceHolder.removeCallback(this);
         mCameraSessionHandlerThread.quitSafely();
-        mExecutor.shutdown();
+        //Workers leave their images and pending images (if any) are returned to the reader before the camera is closed,
+        //late images of the reader are dropped by the stopped pipeline
+        mFramePipeline.stop();
         closeCamera();
     }
 
+    /**
+     * Creates frames pipeline: frames are counted by several workers (the next frame is counted while
+     * the previous one is folded), counted frames are folded into running counts in frames order
+     * @return
+     */
+    private FramePipeline<ExecutionContent> createFramePipeline(){
+        //Scale factor follows the measured frame time, starting from a coarse one for a quick first result
+        final AdaptiveScaleController scaleController = new AdaptiveScaleController(TARGET_FRAME_MILLIS,
+                INITIAL_SCALING_BY, 1, MAX_SCALING_BY);
+        //Frames are folded into running counts, so the palette does not flicker between frames
+        final TemporalHistogram temporalHistogram = new TemporalHistogram(TEMPORAL_DECAY);
+        return FramePipeline.<ExecutionContent>builder()
+                .addStage("count", COUNT_WORKERS, new FramePipeline.Stage<ExecutionContent, CountedFrame>() {
+                    @Override
+                    public CountedFrame process(ExecutionContent content) {
+                        long takenNanos = System.nanoTime();
+                        mPipelineMetrics.record(PipelineMetrics.Stage.QUEUE, takenNanos - content.captureNanos);
+                        int scaleBy;
+                        synchronized (scaleController) {
+                            scaleBy = scaleController.getScaleBy();
+                        }
+                        Histogram histogram;
+                        try {
+                            if (content.image != null)
+                                histogram = Histogram.instantiateHistogram(content.image,
+                                        new Histogram.ConfigBuilder()
+                                                .setScaleBy(scaleBy)
+                                                .setParallelism(HISTOGRAM_PARALLELISM)
+                                                .build());
+                            else
+                                //JPEG frames are decoded into the worker pooled bitmap
+                                histogram = Histogram.instantiateHistogram(content.bytes, 0, content.bytes.length,
+                                        new Histogram.ConfigBuilder()
+                                                .setScaleBy(scaleBy)
+                                                .setParallelism(HISTOGRAM_PARALLELISM)
+                                                .setBitmapReuse(true)
+                                                .build());
+                        }finally {
+                            //Image is returned to the reader as soon as counting is done
+                            content.release();
+                        }
+                        long countedNanos = System.nanoTime();
+                        mPipelineMetrics.record(PipelineMetrics.Stage.COUNT, countedNanos - takenNanos);
+                        synchronized (scaleController) {
+                            scaleController.onFrameProcessed(countedNanos - takenNanos);
+                        }
+                        return new CountedFrame(histogram, content.captureNanos);
+                    }
+                })
+                .addStage("fold", 1, new FramePipeline.Stage<CountedFrame, Void>() {
+                    @Override
+                    public Void process(CountedFrame frame) {
+                        long startNanos = System.nanoTime();
+                        temporalHistogram.accumulate(frame.histogram);
+                        Histogram histogram = temporalHistogram.snapshot(ColorBoxesView.BOXES_COUNT);
+                        mPipelineMetrics.record(PipelineMetrics.Stage.SORT, System.nanoTime() - startNanos);
+                        mPipelineMetrics.onFrameProcessed();
+                        mPipelineMetrics.markPosted(frame.captureNanos);
+                        mExecutionData.postValue(histogram);
+                        return null;
+                    }
+                })
+                .build(new FramePipeline.DropListener() {
+                    @Override
+                    public void onDropped(Object frame) {
+                        //Replaced image must be returned to the reader
+                        if(frame instanceof ExecutionContent)
+                            ((ExecutionContent) frame).release();
+                        mPipelineMetrics.onFrameDropped();
+                    }
+                });
+    }
+
     /**
      * Handler thread initialization function
      * @return HandlerThread
@@ -238,7 +313,7 @@ public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.
         try {
             CameraManager cm = (CameraManager) getBaseContext().getSystemService(CAMERA_SERVICE);
             CameraCharacteristics characteristics = cm.getCameraCharacteristics(mCameraId);
-            Size[] sizes = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP).getOutputSizes(ImageFormat.JPEG);
+            Size[] sizes = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP).getOutputSizes(ANALYSIS_IMAGE_FORMAT);
 
             Size size = new Size(MAX_IMAGE_SIZE_BOUNDARY, MAX_IMAGE_SIZE_BOUNDARY);
             for (Size s : sizes) {
@@ -247,24 +322,27 @@ public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.
                 size = s;
                 break;
             }
-            mImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.JPEG, 2);
+            mImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ANALYSIS_IMAGE_FORMAT, ANALYSIS_MAX_IMAGES);
             mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
                 @Override
                 public void onImageAvailable(ImageReader imageReader) {
                     try {
                         Image image = imageReader.acquireLatestImage();
                         if (image != null) {
-                            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-
-                            byte[] bytes = new byte[buffer.capacity()];
-                            buffer.get(bytes);
-                            //Dropping old frame if any
-                            mImageDataBlockingArray.clear();
-                            mImageDataBlockingArray.put(new ExecutionContent(image.getFormat(), image.getWidth(), image.getHeight(), bytes));
-//                Bitmap bitmap = BitmapFactory.decodeByteArray(bytes,0,bytes.length);
-
-//                mCheckImage.setImageBitmap(bitmap);
-                            image.close();
+                            ExecutionContent content;
+                            if (image.getFormat() == ImageFormat.JPEG) {
+                                ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+
+                                byte[] bytes = new byte[buffer.capacity()];
+                                buffer.get(bytes);
+                                content = new ExecutionContent(image.getFormat(), image.getWidth(), image.getHeight(), bytes);
+                                image.close();
+                            } else {
+                                //YUV planes are handed over as is, the executor closes the image
+                                content = new ExecutionContent(image);
+                            }
+                            //New frame replaces the pending one (if any), see createFramePipeline drop listener
+                            mFramePipeline.submit(content);
 
                         }
                     } catch (Exception e) {
@@ -393,12 +471,30 @@ public class Camera2Activity extends AppCompatActivity implements SurfaceHolder.
     }
 
     /**
-     * Method which represents calculated histogram data
+     * Method which represents calculated histogram data, the boxes are updated on the next vsync
      * @param histogram
      */
     private void populateColorBoxes(Histogram histogram){
-        Histogram.Color[] colors = histogram.getSortedColors();
-        for(int i = 0; i < mColorHolders.length && i < colors.length; i++)
-            mColorHolders[i].populateWith(colors[i],histogram.getColorShare(colors[i]));
+        mPipelineMetrics.markDelivered();
+        mColorBoxes.populateWith(histogram);
+    }
+
+    // Called once the latest histogram is applied to the color boxes
+    private void onColorBoxesApplied(){
+        mPipelineMetrics.markRendered();
+        if(!SHOW_PIPELINE_METRICS)
+            return;
+        long now = System.nanoTime();
+        if(now - mMetricsRefreshNanos >= METRICS_REFRESH_NANOS) {
+            mMetricsRefreshNanos = now;
+            mMetricsOverlay.setText(mMetricsText, 0, mPipelineMetrics.format(mMetricsText));
+        }
+    }
+
+    /**
+     * @return latency metrics of the frames pipeline
+     */
+    public PipelineMetrics getPipelineMetrics(){
+        return mPipelineMetrics;
     }
 }
\ No newline at end of file
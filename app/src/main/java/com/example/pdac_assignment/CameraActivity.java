@@ -10,16 +10,15 @@ import android.Manifest;
 import android.content.pm.PackageManager;
 import android.hardware.Camera;
 import android.os.Bundle;
-import android.util.Log;
+import android.view.View;
 import android.widget.FrameLayout;
-import android.widget.ImageView;
+import android.widget.TextView;
 
+import com.example.pdac_assignment.Utils.AdaptiveScaleController;
+import com.example.pdac_assignment.Utils.FramePipeline;
 import com.example.pdac_assignment.Utils.Histogram;
-import com.example.pdac_assignment.Utils.Utils;
-
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import com.example.pdac_assignment.Utils.PipelineMetrics;
+import com.example.pdac_assignment.Utils.TemporalHistogram;
 
 /**
  * This activity is responsible for camera preview and color set representation (using old API)
@@ -27,16 +26,26 @@ import java.util.concurrent.Executors;
  * For the new camera API usage see Camera2 class
  */
 @SuppressWarnings("deprecation")
-public class CameraActivity extends AppCompatActivity implements Camera.PreviewCallback{
+public class CameraActivity extends AppCompatActivity implements CameraPreview.PreviewConsumer{
 
     private static final String TAG = "MainActivity";
     private CameraPreview mCameraPreview = null;
     private Camera mCamera = null;
     private FrameLayout mCameraContainer = null;
-    private ImageView mCheckImage = null;
-
-    // Helper class array for color set representation
-    private ColorBoxViewHolder [] mColorHolders = new ColorBoxViewHolder[5];
+    // Debug overlay of the pipeline metrics
+    private TextView mMetricsOverlay = null;
+    // Per stage latency of the frames processing
+    private final PipelineMetrics mPipelineMetrics = new PipelineMetrics();
+    // Pipeline metrics overlay is shown in debug builds
+    private final static boolean SHOW_PIPELINE_METRICS = BuildConfig.DEBUG;
+    // Metrics overlay is refreshed at most every this many nanoseconds, each refresh relayouts it
+    private final static long METRICS_REFRESH_NANOS = 500000000L;
+    // Last metrics overlay refresh time and its reused text buffer
+    private long mMetricsRefreshNanos = 0;
+    private final char[] mMetricsText = new char[PipelineMetrics.FORMAT_CAPACITY];
+
+    // Color set representation, the most popular colors are drawn by a single view
+    private ColorBoxesView mColorBoxes = null;
     private final static int REQUEST_PERMISSION = 100;
 
 
@@ -44,26 +53,39 @@ public class CameraActivity extends AppCompatActivity implements Camera.PreviewC
     final MutableLiveData<Histogram> mExecutionData = new MutableLiveData<>();
 
 
-    // Blocking array of that holds an awaiting image data for further processing
-    private ArrayBlockingQueue<ExecutionContent> mImageDataBlockingArray = new ArrayBlockingQueue<ExecutionContent>(1);
+    // Preview callback buffers, frames are captured into them instead of a new array per frame
+    private final FrameBufferPool mFrameBufferPool = new FrameBufferPool();
+    // Format and size of preview frames, cached when the preview is configured
+    private volatile FrameDescriptor mFrameDescriptor = null;
+    // Frames counting workers, each counting frame holds its buffer
+    private final static int COUNT_WORKERS = 2;
+    // One buffer is filled by the camera, one awaits in the pipeline mailbox and the rest are counted
+    private final static int PREVIEW_BUFFERS_COUNT = COUNT_WORKERS + 2;
 
-    // Executor, thread on which histogram calculations are done
-    private ExecutorService mExecutor = null;
+    // Frames pipeline: counting workers, then a single worker folding counted frames into running counts
+    private FramePipeline<ExecutionContent> mFramePipeline = null;
 
     // Initial image scaling value to give a better user experience
     private final static int INITIAL_SCALING_BY = 64;
+    // The coarsest scaling value the frames are processed with under load
+    private final static int MAX_SCALING_BY = 64;
+    // Frame processing time budget the scaling value is adapted to
+    private final static long TARGET_FRAME_MILLIS = 66;
+    // Histogram pixels are counted on all the available cores, shared by the counting workers:
+    // their jobs run on the same pool at once, every job merges its own worker counters
+    private final static int HISTOGRAM_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() / COUNT_WORKERS);
+    // Share of the accumulated colors counts kept with each new frame
+    private final static float TEMPORAL_DECAY = 0.7F;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         mCameraContainer =  findViewById(R.id.main_camera_preview);
-        mCheckImage = findViewById(R.id.main_image_check);
-        mColorHolders[0] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_0));
-        mColorHolders[1] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_1));
-        mColorHolders[2] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_2));
-        mColorHolders[3] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_3));
-        mColorHolders[4] = new ColorBoxViewHolder(findViewById(R.id.main_camera_colorbox_4));
+        mMetricsOverlay = findViewById(R.id.main_metrics_overlay);
+        mMetricsOverlay.setVisibility(SHOW_PIPELINE_METRICS ? View.VISIBLE : View.GONE);
+        mColorBoxes = findViewById(R.id.main_camera_colorboxes);
+        mColorBoxes.setOnAppliedListener(this::onColorBoxesApplied);
 
         if(!getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA_ANY)) {
             showCriticalDialogMessage("Camera hardware features is not present");
@@ -91,50 +113,109 @@ public class CameraActivity extends AppCompatActivity implements Camera.PreviewC
                 params.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
             mCamera.setParameters(params);
 
-            mCamera.setPreviewCallback(this);
-
         }catch (Exception e){
             showCriticalDialogMessage(e.getMessage());
             return;
         }
         mCameraPreview = new CameraPreview(this,mCamera);
         mCameraContainer.addView(mCameraPreview);
-        mExecutor = Executors.newSingleThreadExecutor();
-        mExecutor.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    int scaleBy = INITIAL_SCALING_BY;
-                    while (true) {
-                        ExecutionContent content = mImageDataBlockingArray.take();
-                        //The incoming image format NV21 set untouched because it supported on all platforms
-                        byte[] bytes = Utils.convertYuvToJpeg(content.bytes, content.previewFormat, content.width, content.height);
-                        final Histogram histogram = Histogram.instantiateHistogram(bytes, 0, bytes.length,
-                                new Histogram.ConfigBuilder()
-                                        .setScaleBy(scaleBy)
-                                        .build());
-                        //upscaling the factor to the default scaling setting with each cycle
-                        if(scaleBy > Histogram.DEFAULT_SCALING_FACTOR)
-                            scaleBy /=2;
-                        mExecutionData.postValue(histogram);
-                    }
+        mFramePipeline = createFramePipeline();
+        mFramePipeline.start();
 
-                } catch (InterruptedException e) {
-                    Log.d(TAG,"Executing interrupted",e);
-                }
-            }
-        });
+    }
 
+    /**
+     * Creates frames pipeline: frames are counted by several workers (the next frame is counted while
+     * the previous one is folded), counted frames are folded into running counts in frames order
+     * @return
+     */
+    private FramePipeline<ExecutionContent> createFramePipeline(){
+        //Scale factor follows the measured frame time, starting from a coarse one for a quick first result
+        final AdaptiveScaleController scaleController = new AdaptiveScaleController(TARGET_FRAME_MILLIS,
+                INITIAL_SCALING_BY, Histogram.DEFAULT_SCALING_FACTOR, MAX_SCALING_BY);
+        //Frames are folded into running counts, so the palette does not flicker between frames
+        final TemporalHistogram temporalHistogram = new TemporalHistogram(TEMPORAL_DECAY);
+        return FramePipeline.<ExecutionContent>builder()
+                .addStage("count", COUNT_WORKERS, new FramePipeline.Stage<ExecutionContent, CountedFrame>() {
+                    @Override
+                    public CountedFrame process(ExecutionContent content) {
+                        long takenNanos = System.nanoTime();
+                        mPipelineMetrics.record(PipelineMetrics.Stage.QUEUE, takenNanos - content.captureNanos);
+                        int scaleBy;
+                        synchronized (scaleController) {
+                            scaleBy = scaleController.getScaleBy();
+                        }
+                        Histogram histogram;
+                        try {
+                            //The incoming image format NV21 set untouched because it supported on all platforms
+                            //colors are read directly from the frame planes, no JPEG round trip is needed
+                            histogram = Histogram.instantiateHistogramFromYuv(content.bytes, content.previewFormat, content.width, content.height,
+                                    new Histogram.ConfigBuilder()
+                                            .setScaleBy(scaleBy)
+                                            .setParallelism(HISTOGRAM_PARALLELISM)
+                                            .build());
+                        }finally {
+                            //Buffer is returned to the camera as soon as counting is done
+                            content.release();
+                        }
+                        long countedNanos = System.nanoTime();
+                        mPipelineMetrics.record(PipelineMetrics.Stage.COUNT, countedNanos - takenNanos);
+                        synchronized (scaleController) {
+                            scaleController.onFrameProcessed(countedNanos - takenNanos);
+                        }
+                        return new CountedFrame(histogram, content.captureNanos);
+                    }
+                })
+                .addStage("fold", 1, new FramePipeline.Stage<CountedFrame, Void>() {
+                    @Override
+                    public Void process(CountedFrame frame) {
+                        long startNanos = System.nanoTime();
+                        temporalHistogram.accumulate(frame.histogram);
+                        Histogram histogram = temporalHistogram.snapshot(ColorBoxesView.BOXES_COUNT);
+                        mPipelineMetrics.record(PipelineMetrics.Stage.SORT, System.nanoTime() - startNanos);
+                        mPipelineMetrics.onFrameProcessed();
+                        mPipelineMetrics.markPosted(frame.captureNanos);
+                        mExecutionData.postValue(histogram);
+                        return null;
+                    }
+                })
+                .build(new FramePipeline.DropListener() {
+                    @Override
+                    public void onDropped(Object frame) {
+                        //Replaced frame buffer goes back to the camera
+                        if(frame instanceof ExecutionContent)
+                            ((ExecutionContent) frame).release();
+                        mPipelineMetrics.onFrameDropped();
+                    }
+                });
     }
 
     /**
-     * Method which represents calculated histogram data
+     * Method which represents calculated histogram data, the boxes are updated on the next vsync
      * @param histogram
      */
     private void populateColorBoxes(Histogram histogram){
-        Histogram.Color[] colors = histogram.getSortedColors();
-        for(int i = 0; i < mColorHolders.length && i < colors.length; i++)
-            mColorHolders[i].populateWith(colors[i],histogram.getColorShare(colors[i]));
+        mPipelineMetrics.markDelivered();
+        mColorBoxes.populateWith(histogram);
+    }
+
+    // Called once the latest histogram is applied to the color boxes
+    private void onColorBoxesApplied(){
+        mPipelineMetrics.markRendered();
+        if(!SHOW_PIPELINE_METRICS)
+            return;
+        long now = System.nanoTime();
+        if(now - mMetricsRefreshNanos >= METRICS_REFRESH_NANOS) {
+            mMetricsRefreshNanos = now;
+            mMetricsOverlay.setText(mMetricsText, 0, mPipelineMetrics.format(mMetricsText));
+        }
+    }
+
+    /**
+     * @return latency metrics of the frames pipeline
+     */
+    public PipelineMetrics getPipelineMetrics(){
+        return mPipelineMetrics;
     }
 
     @Override
@@ -151,15 +232,18 @@ public class CameraActivity extends AppCompatActivity implements Camera.PreviewC
     @Override
     protected void onStop() {
         super.onStop();
+        //Workers leave their frames and pending frames (if any) are dropped before the camera is released
+        if(mFramePipeline != null)
+            mFramePipeline.stop();
         releaseCamera();
-        mExecutor.shutdown();
         mCameraContainer.removeAllViews();
 
 
     }
     private void releaseCamera(){
         if(mCamera != null) {
-            mCamera.setPreviewCallback(null);
+            mFrameBufferPool.detach();
+            mCamera.setPreviewCallbackWithBuffer(null);
             mCamera.stopPreview();
             mCamera.release();
             mCamera = null;
@@ -194,6 +278,19 @@ public class CameraActivity extends AppCompatActivity implements Camera.PreviewC
     }
 
 
+    /**
+     * PreviewConsumer interface implementation, caches frames description and hands preview buffers to the camera
+     * @param camera
+     * @param params
+     */
+    @Override
+    public void onPreviewConfigured(Camera camera, Camera.Parameters params) {
+        FrameDescriptor descriptor = FrameDescriptor.of(params);
+        mFrameDescriptor = descriptor;
+        mFrameBufferPool.attach(camera, descriptor, PREVIEW_BUFFERS_COUNT);
+        camera.setPreviewCallbackWithBuffer(this);
+    }
+
     /**
      * PreviewCallback interface implementation, the raw image camera income
      * @param bytes
@@ -201,18 +298,13 @@ public class CameraActivity extends AppCompatActivity implements Camera.PreviewC
      */
     @Override
     public void onPreviewFrame(byte[] bytes, Camera camera) {
-
-        try {
-            //Dropping old frame if any
-            mImageDataBlockingArray.clear();
-            //Adding new frame for the executor to process
-            mImageDataBlockingArray.put(new ExecutionContent(camera.getParameters().getPreviewFormat()
-                    ,camera.getParameters().getPreviewSize().width
-                    ,camera.getParameters().getPreviewSize().height
-                    ,bytes));
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        FrameDescriptor descriptor = mFrameDescriptor;
+        if(bytes == null || descriptor == null || bytes.length != descriptor.bufferSize) {
+            //Buffer of previous preview configuration
+            return;
         }
+        //New frame replaces the pending one (if any) without blocking, see createFramePipeline drop listener
+        mFramePipeline.submit(new ExecutionContent(descriptor, bytes, mFrameBufferPool));
     }
 
 
@@ -20,6 +20,18 @@ public class CameraPreview extends SurfaceView implements SurfaceHolder.Callback
     private Camera mCamera;
     private int orientation = 0;
 
+    /**
+     * Preview frames consumer that is configured each time the preview size is set,
+     * before the preview is started
+     */
+    public interface PreviewConsumer extends Camera.PreviewCallback{
+        /**
+         * @param camera
+         * @param params parameters the preview is started with
+         */
+        void onPreviewConfigured(Camera camera, Camera.Parameters params);
+    }
+
 
     public CameraPreview(Context context, Camera camera) {
         super(context);
@@ -104,10 +116,12 @@ public class CameraPreview extends SurfaceView implements SurfaceHolder.Callback
         try {
             Camera.Parameters params = setClosestRatio(mCamera.getParameters(),w,h) ;
             mCamera.setParameters(params);
+            if(getContext() instanceof PreviewConsumer)
+                ((PreviewConsumer)getContext()).onPreviewConfigured(mCamera, params);
+            else if(getContext() instanceof Camera.PreviewCallback)
+                mCamera.setPreviewCallback((Camera.PreviewCallback)getContext());
             mCamera.setPreviewDisplay(mHolder);
             mCamera.startPreview();
-            if(getContext() instanceof Camera.PreviewCallback)
-                mCamera.setPreviewCallback((Camera.PreviewCallback)getContext());
 
         } catch (Exception e){
             Log.d(TAG, "Error starting camera preview: " + e.getMessage());
@@ -0,0 +1,278 @@
+package com.example.pdac_assignment;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.pdac_assignment.Utils.Histogram;
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Draws all the color boxes (color, share and channels label of the most popular colors) in a single view,
+ * so updates cause no TextView relayouts. Boxes are laid out in a row, or in a column if the view
+ * has exact height and flexible width (landscape layout).
+ * Histograms are coalesced: the latest one is applied once per vsync, the view is invalidated only if a box color
+ * or its rounded share changes, and texts are formatted into reused char buffers, so rendering allocates nothing
+ */
+public class ColorBoxesView extends View {
+    public static final int BOXES_COUNT = 5;
+    //Box and text sizes, dp and sp
+    private static final float BOX_WIDTH = 52;
+    private static final float BOX_HEIGHT = 32;
+    private static final float BOX_MARGIN = 3;
+    private static final float BOX_STROKE = 1.5F;
+    private static final float LABEL_WIDTH = 86;
+    private static final float LABEL_MARGIN = 5;
+    private static final float PERCENT_TEXT_SIZE = 14;
+    private static final float LABEL_TEXT_SIZE = 9;
+    //Share hundredths of an empty box
+    private static final int EMPTY = -1;
+    //"R:255 B:255 C:255" and "100.00%" fit
+    private static final int LABEL_CAPACITY = 20;
+    private static final int PERCENT_CAPACITY = 8;
+    private static final String DEFAULT_LABEL = "R: B: G:";
+
+    private final Paint mBoxPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mStrokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mPercentPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mBoxRect = new RectF();
+    private final char mDecimalSeparator = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+    private final String mDefaultPercent = "0" + mDecimalSeparator + "0%";
+
+    //Drawn boxes state and their formatted texts
+    private final int[] mColors = new int[BOXES_COUNT];
+    private final int[] mShares = new int[BOXES_COUNT];
+    private final char[][] mPercentChars = new char[BOXES_COUNT][PERCENT_CAPACITY];
+    private final int[] mPercentLengths = new int[BOXES_COUNT];
+    private final char[][] mLabelChars = new char[BOXES_COUNT][LABEL_CAPACITY];
+    private final int[] mLabelLengths = new int[BOXES_COUNT];
+    //Boxes state of the latest histogram, applied on the next vsync
+    private final int[] mPendingColors = new int[BOXES_COUNT];
+    private final int[] mPendingShares = new int[BOXES_COUNT];
+    private boolean mFrameScheduled = false;
+    //Called once the latest histogram is applied, null if nobody listens
+    private Runnable mOnAppliedListener = null;
+
+    private final float mBoxWidth;
+    private final float mBoxHeight;
+    private final float mBoxMargin;
+    private final float mLabelWidth;
+    private final float mLabelMargin;
+    private boolean mVertical = false;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameScheduled = false;
+            applyPending();
+        }
+    };
+
+    public ColorBoxesView(Context context) {
+        this(context, null);
+    }
+
+    public ColorBoxesView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        mBoxWidth = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, BOX_WIDTH, metrics);
+        mBoxHeight = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, BOX_HEIGHT, metrics);
+        mBoxMargin = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, BOX_MARGIN, metrics);
+        mLabelWidth = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, LABEL_WIDTH, metrics);
+        mLabelMargin = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, LABEL_MARGIN, metrics);
+        mBoxPaint.setStyle(Paint.Style.FILL);
+        mStrokePaint.setStyle(Paint.Style.STROKE);
+        mStrokePaint.setColor(Color.WHITE);
+        mStrokePaint.setStrokeWidth(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, BOX_STROKE, metrics));
+        mPercentPaint.setTextAlign(Paint.Align.CENTER);
+        mPercentPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        mPercentPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, PERCENT_TEXT_SIZE, metrics));
+        mLabelPaint.setTextAlign(Paint.Align.CENTER);
+        mLabelPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        mLabelPaint.setColor(Color.WHITE);
+        mLabelPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, LABEL_TEXT_SIZE, metrics));
+        for(int i = 0; i < BOXES_COUNT; i++) {
+            mPendingShares[i] = EMPTY;
+            setBox(i, 0, EMPTY);
+        }
+    }
+
+    /**
+     * @param listener called on the main thread once the latest histogram is applied (see PipelineMetrics.markRendered)
+     */
+    public void setOnAppliedListener(@Nullable Runnable listener){
+        mOnAppliedListener = listener;
+    }
+
+    /**
+     * Shows the most popular colors of the histogram, the histogram replaces a not yet applied one.
+     * Must be called on the main thread, allocates nothing if the histogram top colors are selected already (see TemporalHistogram.snapshot)
+     * @param histogram
+     */
+    public void populateWith(@NonNull Histogram histogram){
+        //Counts are read into the shares and converted in place
+        int count = histogram.getTopColors(BOXES_COUNT, mPendingColors, mPendingShares);
+        for(int i = 0; i < BOXES_COUNT; i++) {
+            if(i < count)
+                mPendingShares[i] = Math.round(histogram.getColorShare(mPendingShares[i]) * 100);
+            else {
+                mPendingColors[i] = 0;
+                mPendingShares[i] = EMPTY;
+            }
+        }
+        if(!mFrameScheduled) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    // Helper function, applies the latest histogram boxes, the view is redrawn only if any of them changes
+    private void applyPending(){
+        boolean changed = false;
+        for(int i = 0; i < BOXES_COUNT; i++)
+            if(mPendingColors[i] != mColors[i] || mPendingShares[i] != mShares[i]) {
+                setBox(i, mPendingColors[i], mPendingShares[i]);
+                changed = true;
+            }
+        if(changed)
+            invalidate();
+        if(mOnAppliedListener != null)
+            mOnAppliedListener.run();
+    }
+
+    // Helper function, sets box state and formats its texts
+    private void setBox(int index, int color, int shareHundredths){
+        mColors[index] = color;
+        mShares[index] = shareHundredths;
+        if(shareHundredths == EMPTY) {
+            mPercentLengths[index] = copy(mDefaultPercent, mPercentChars[index]);
+            mLabelLengths[index] = copy(DEFAULT_LABEL, mLabelChars[index]);
+        }else {
+            mPercentLengths[index] = formatPercent(shareHundredths, mDecimalSeparator, mPercentChars[index]);
+            mLabelLengths[index] = formatLabel(color, mLabelChars[index]);
+        }
+    }
+
+    private static int copy(String text, char[] chars){
+        text.getChars(0, text.length(), chars, 0);
+        return text.length();
+    }
+
+    /**
+     * Formats share with two decimals and a percent sign ("8.22%")
+     * @param hundredths share in hundredths of percent
+     * @param separator decimal separator
+     * @param chars output, at least 8 chars
+     * @return formatted length
+     */
+    static int formatPercent(int hundredths, char separator, @NonNull char[] chars){
+        int length = formatInt(hundredths / 100, chars, 0);
+        chars[length++] = separator;
+        chars[length++] = (char) ('0' + hundredths / 10 % 10);
+        chars[length++] = (char) ('0' + hundredths % 10);
+        chars[length++] = '%';
+        return length;
+    }
+
+    /**
+     * Formats color channels the same way Histogram.Color.toString does ("R:255 B:0 C:0")
+     * @param color
+     * @param chars output, at least 17 chars
+     * @return formatted length
+     */
+    static int formatLabel(int color, @NonNull char[] chars){
+        int length = 0;
+        chars[length++] = 'R';
+        chars[length++] = ':';
+        length = formatInt((color >> 16) & 0xff, chars, length);
+        chars[length++] = ' ';
+        chars[length++] = 'B';
+        chars[length++] = ':';
+        length = formatInt((color >> 8) & 0xff, chars, length);
+        chars[length++] = ' ';
+        chars[length++] = 'C';
+        chars[length++] = ':';
+        return formatInt(color & 0xff, chars, length);
+    }
+
+    // Helper function, writes non negative value digits at offset, returns the end offset
+    private static int formatInt(int value, char[] chars, int offset){
+        int digits = 1;
+        for(int rest = value / 10; rest > 0; rest /= 10)
+            digits++;
+        for(int i = offset + digits - 1; i >= offset; i--, value /= 10)
+            chars[i] = (char) ('0' + value % 10);
+        return offset + digits;
+    }
+
+    /**
+     * Text color readable over the box color
+     * @param color
+     * @return
+     */
+    static int contrastColorOf(int color){
+        return ((color >> 16) & 0xff) < 0x7f && ((color >> 8) & 0xff) < 0x7f && (color & 0xff) < 0x7f
+                ? Color.WHITE : Color.BLACK;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        //Column if the height is given and the width is up to the content (landscape layout)
+        mVertical = MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.EXACTLY
+                && MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY;
+        float cellWidth = Math.max(mBoxWidth + 2 * mBoxMargin, mLabelWidth + 2 * mLabelMargin);
+        float cellHeight = mBoxHeight + 2 * mBoxMargin + mLabelPaint.descent() - mLabelPaint.ascent();
+        int width = (int) Math.ceil(cellWidth * (mVertical ? 1 : BOXES_COUNT)) + getPaddingLeft() + getPaddingRight();
+        int height = (int) Math.ceil(cellHeight * (mVertical ? BOXES_COUNT : 1)) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float width = getWidth() - left - getPaddingRight();
+        float height = getHeight() - top - getPaddingBottom();
+        float cellWidth = mVertical ? width : width / BOXES_COUNT;
+        float cellHeight = mVertical ? height / BOXES_COUNT : height;
+        float labelHeight = mLabelPaint.descent() - mLabelPaint.ascent();
+        for(int i = 0; i < BOXES_COUNT; i++) {
+            float centerX = left + (mVertical ? 0 : i * cellWidth) + cellWidth / 2;
+            //Box and label are centered in the cell as a block
+            float boxTop = top + (mVertical ? i * cellHeight : 0)
+                    + Math.max(mBoxMargin, (cellHeight - mBoxHeight - mBoxMargin - labelHeight) / 2);
+            mBoxRect.set(centerX - mBoxWidth / 2, boxTop, centerX + mBoxWidth / 2, boxTop + mBoxHeight);
+            boolean empty = mShares[i] == EMPTY;
+            mBoxPaint.setColor(empty ? Color.TRANSPARENT : mColors[i]);
+            canvas.drawRect(mBoxRect, mBoxPaint);
+            canvas.drawRect(mBoxRect, mStrokePaint);
+            mPercentPaint.setColor(empty ? Color.WHITE : contrastColorOf(mColors[i]));
+            float percentBaseline = mBoxRect.centerY() - (mPercentPaint.descent() + mPercentPaint.ascent()) / 2;
+            canvas.drawText(mPercentChars[i], 0, mPercentLengths[i], centerX, percentBaseline, mPercentPaint);
+            canvas.drawText(mLabelChars[i], 0, mLabelLengths[i], centerX,
+                    mBoxRect.bottom + mBoxMargin - mLabelPaint.ascent(), mLabelPaint);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if(mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+    }
+}
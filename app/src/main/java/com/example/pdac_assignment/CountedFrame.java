@@ -0,0 +1,19 @@
+package com.example.pdac_assignment;
+
+import androidx.annotation.NonNull;
+
+import com.example.pdac_assignment.Utils.Histogram;
+
+/**
+ * Histogram of a single frame handed from the counting stage to the folding stage of the frames pipeline
+ */
+class CountedFrame {
+    final Histogram histogram;
+    // Capture time of the frame (see ExecutionContent.captureNanos)
+    final long captureNanos;
+
+    CountedFrame(@NonNull Histogram histogram, long captureNanos) {
+        this.histogram = histogram;
+        this.captureNanos = captureNanos;
+    }
+}
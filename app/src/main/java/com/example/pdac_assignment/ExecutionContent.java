@@ -1,5 +1,9 @@
 package com.example.pdac_assignment;
 
+import android.media.Image;
+
+import androidx.annotation.NonNull;
+
 /**
  * Class that used as container for a LiveData content
  */
@@ -8,11 +12,47 @@ class ExecutionContent{
     final int width;
     final int height;
     final byte[] bytes;
+    // Camera2 image which planes are read in place, null for byte array content
+    final Image image;
+    // Pool the bytes buffer is returned to once processed, null if the buffer is not pooled
+    private final FrameBufferPool bufferPool;
+    // Time the content was created by the camera callback (System.nanoTime), pipeline latency is measured from it
+    final long captureNanos = System.nanoTime();
 
     ExecutionContent(int previewFormat, int width, int height, byte[] bytes) {
         this.previewFormat = previewFormat;
         this.width = width;
         this.height = height;
         this.bytes = bytes;
+        this.image = null;
+        this.bufferPool = null;
+    }
+
+    ExecutionContent(@NonNull FrameDescriptor descriptor, byte[] bytes, FrameBufferPool bufferPool) {
+        this.previewFormat = descriptor.previewFormat;
+        this.width = descriptor.width;
+        this.height = descriptor.height;
+        this.bytes = bytes;
+        this.image = null;
+        this.bufferPool = bufferPool;
+    }
+
+    ExecutionContent(@NonNull Image image) {
+        this.previewFormat = image.getFormat();
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.bytes = null;
+        this.image = image;
+        this.bufferPool = null;
+    }
+
+    /**
+     * Releases resources held by content, must be called once processing is done (or frame is dropped)
+     */
+    void release(){
+        if(image != null)
+            image.close();
+        if(bufferPool != null)
+            bufferPool.recycle(bytes);
     }
 }
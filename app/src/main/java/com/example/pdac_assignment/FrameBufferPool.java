@@ -0,0 +1,59 @@
+package com.example.pdac_assignment;
+
+import android.hardware.Camera;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Preallocated preview callback buffers of the legacy camera.
+ * Buffers are handed to the camera with addCallbackBuffer, come back filled in onPreviewFrame
+ * and are returned to the camera once the frame is processed (or dropped), so no frame is allocated per preview callback
+ */
+@SuppressWarnings( "deprecation" )
+class FrameBufferPool {
+    private Camera mCamera = null;
+    //Buffers of the current configuration, only these are returned to the camera
+    private byte[][] mBuffers = new byte[0][];
+
+    /**
+     * Allocates buffers for the given frame descriptor and hands them to the camera.
+     * Camera buffers queue is cleared first (the preview callback is reset, it is set again by the caller),
+     * buffers of previous configuration are dropped as soon as they are recycled, so buffers do not pile up on reconfiguration
+     * @param camera
+     * @param descriptor
+     * @param buffersCount
+     */
+    synchronized void attach(@NonNull Camera camera, @NonNull FrameDescriptor descriptor, int buffersCount){
+        camera.setPreviewCallbackWithBuffer(null);
+        mCamera = camera;
+        mBuffers = new byte[buffersCount][];
+        for(int i = 0; i < buffersCount; i++) {
+            mBuffers[i] = new byte[descriptor.bufferSize];
+            camera.addCallbackBuffer(mBuffers[i]);
+        }
+    }
+
+    /**
+     * Stops returning buffers to the camera, must be called before the camera is released
+     */
+    synchronized void detach(){
+        mCamera = null;
+    }
+
+    /**
+     * Returns processed frame buffer to the camera
+     * @param buffer
+     */
+    synchronized void recycle(byte[] buffer){
+        if(mCamera != null && buffer != null && isCurrent(buffer))
+            mCamera.addCallbackBuffer(buffer);
+    }
+
+    // Helper function, buffer identity check against the (few) buffers of the current configuration
+    private boolean isCurrent(byte[] buffer){
+        for(byte[] current : mBuffers)
+            if(current == buffer)
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.pdac_assignment;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Preview frames format and size, read from camera parameters once per preview configuration
+ * so nothing is queried from the camera service per frame
+ */
+@SuppressWarnings( "deprecation" )
+class FrameDescriptor {
+    final int previewFormat;
+    final int width;
+    final int height;
+    // Size of a callback buffer that fits a whole frame
+    final int bufferSize;
+
+    FrameDescriptor(int previewFormat, int width, int height) {
+        this.previewFormat = previewFormat;
+        this.width = width;
+        this.height = height;
+        this.bufferSize = bufferSizeOf(previewFormat, width, height);
+    }
+
+    static FrameDescriptor of(@NonNull Camera.Parameters params){
+        Camera.Size size = params.getPreviewSize();
+        return new FrameDescriptor(params.getPreviewFormat(), size.width, size.height);
+    }
+
+    /**
+     * Calculates preview frame size in bytes,
+     * YV12 planes are 16 bytes aligned: https://developer.android.com/reference/android/hardware/Camera.Parameters#setPreviewFormat(int)
+     * @param previewFormat
+     * @param width
+     * @param height
+     * @return
+     */
+    static int bufferSizeOf(int previewFormat, int width, int height){
+        if(previewFormat == ImageFormat.YV12) {
+            int yStride = (width + 15) & ~15;
+            int uvStride = ((yStride / 2) + 15) & ~15;
+            return yStride * height + uvStride * (height / 2) * 2;
+        }
+        return width * height * ImageFormat.getBitsPerPixel(previewFormat) / 8;
+    }
+}
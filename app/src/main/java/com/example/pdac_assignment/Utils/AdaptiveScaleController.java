@@ -0,0 +1,97 @@
+package com.example.pdac_assignment.Utils;
+
+/**
+ * Picks the histogram scaling factor out of measured per frame processing time.
+ * Processing cost is proportional to the counted pixels, so halving the scale factor makes a frame about 4 times slower.
+ * The controller backs off (doubles the factor) when smoothed frame time exceeds the target latency
+ * and refines (halves the factor) only when the predicted time of a finer frame still fits the target with headroom.
+ * The scaling factor is always a power of 2, as required by Histogram.ConfigBuilder.setScaleBy.
+ * The class is not thread safe, it is expected to be used by the single histogram worker thread
+ */
+public class AdaptiveScaleController {
+    //Weight of the last measured frame in smoothed frame time
+    private static final double SMOOTHING = 0.3;
+    //Cost factor of a single scale step (scale factor applies to both dimensions)
+    private static final int STEP_COST = 4;
+    //Predicted finer frame time must be within this share of the target
+    private static final double REFINE_HEADROOM = 0.8;
+    //Frames measured at a new scale before it may be refined again
+    private static final int SETTLE_FRAMES = 2;
+
+    private final long mTargetNanos;
+    private final int mMinScaleBy;
+    private final int mMaxScaleBy;
+    private int mScaleBy;
+    //Smoothed frame time at the current scale, negative until the first frame is measured
+    private double mAverageNanos = -1;
+    private int mFramesAtScale = 0;
+    private long mFrameStartNanos = 0;
+
+    /**
+     * @param targetFrameMillis frame processing time budget
+     * @param initialScaleBy scale factor of the first frame
+     * @param minScaleBy the finest scale factor, power of 2
+     * @param maxScaleBy the coarsest scale factor, power of 2
+     */
+    public AdaptiveScaleController(long targetFrameMillis, int initialScaleBy, int minScaleBy, int maxScaleBy){
+        if(targetFrameMillis <= 0)
+            throw new IllegalArgumentException("Target frame time must be positive: " + targetFrameMillis);
+        if(!isPowerOf2(minScaleBy) || !isPowerOf2(maxScaleBy) || minScaleBy > maxScaleBy)
+            throw new IllegalArgumentException("Invalid scale bounds: " + minScaleBy + ".." + maxScaleBy);
+        mTargetNanos = targetFrameMillis * 1000000L;
+        mMinScaleBy = minScaleBy;
+        mMaxScaleBy = maxScaleBy;
+        mScaleBy = Math.min(Math.max(Integer.highestOneBit(Math.max(initialScaleBy, 1)), minScaleBy), maxScaleBy);
+    }
+
+    /**
+     * @return scale factor the next frame should be processed with
+     */
+    public int getScaleBy(){
+        return mScaleBy;
+    }
+
+    /**
+     * Marks the start of frame processing
+     */
+    public void startFrame(){
+        mFrameStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of frame processing started with startFrame and adapts the scale factor
+     * @return scale factor for the next frame
+     */
+    public int endFrame(){
+        return onFrameProcessed(System.nanoTime() - mFrameStartNanos);
+    }
+
+    /**
+     * Adapts the scale factor to a frame processing time
+     * @param elapsedNanos processing time of a frame processed with the current scale factor
+     * @return scale factor for the next frame
+     */
+    public int onFrameProcessed(long elapsedNanos){
+        mAverageNanos = mAverageNanos < 0 ? elapsedNanos : mAverageNanos + SMOOTHING * (elapsedNanos - mAverageNanos);
+        mFramesAtScale++;
+        if(mAverageNanos > mTargetNanos && mScaleBy < mMaxScaleBy) {
+            mScaleBy *= 2;
+            onScaleChanged(1.0 / STEP_COST);
+        }else if(mFramesAtScale >= SETTLE_FRAMES && mScaleBy > mMinScaleBy
+                && mAverageNanos * STEP_COST < mTargetNanos * REFINE_HEADROOM) {
+            mScaleBy /= 2;
+            onScaleChanged(STEP_COST);
+        }
+        return mScaleBy;
+    }
+
+    // Helper function, smoothed time is carried over to the new scale as a prediction
+    private void onScaleChanged(double costFactor){
+        mAverageNanos *= costFactor;
+        mFramesAtScale = 0;
+    }
+
+    private static boolean isPowerOf2(int value){
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.pdac_assignment.Utils;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import com.example.pdac_assignment.core.ColorCounter;
+import com.example.pdac_assignment.core.PixelLattice;
+import com.example.pdac_assignment.core.PixelRows;
+import com.example.pdac_assignment.core.PixelSpans;
+import com.example.pdac_assignment.core.PixelsBuffer;
+
+/**
+ * Bitmap rows, pixels are pulled in bulk row strips into the thread scratch buffer
+ * and counted in memory order. Lattice rows are pulled one by one and every step-th pixel is counted
+ */
+class BitmapPixelRows implements PixelRows, PixelLattice, PixelSpans {
+    private final Bitmap mBitmap;
+    //Offsets of the first counted pixel
+    private final int mX0;
+    private final int mY0;
+    private final int mStep;
+
+    BitmapPixelRows(@NonNull Bitmap bitmap) {
+        this(bitmap, 0, 0, 1);
+    }
+
+    private BitmapPixelRows(@NonNull Bitmap bitmap, int x0, int y0, int step) {
+        mBitmap = bitmap;
+        mX0 = x0;
+        mY0 = y0;
+        mStep = step;
+    }
+
+    @Override
+    public PixelRows lattice(int x0, int y0, int step) {
+        if(step < 1 || x0 < 0 || x0 >= step || y0 < 0 || y0 >= step)
+            throw new IllegalArgumentException("Invalid lattice offset " + x0 + "," + y0 + " step " + step);
+        return new BitmapPixelRows(mBitmap, x0, y0, step);
+    }
+
+    @Override
+    public int getRowsCount() {
+        return (mBitmap.getHeight() - mY0 + mStep - 1) / mStep;
+    }
+
+    @Override
+    public int getRowWidth() {
+        return (mBitmap.getWidth() - mX0 + mStep - 1) / mStep;
+    }
+
+    @Override
+    public int getPixelsCount() {
+        return getRowsCount() * getRowWidth();
+    }
+
+    @Override
+    public int getWidth() {
+        return mBitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mBitmap.getHeight();
+    }
+
+    @Override
+    public void countRows(int fromRow, int toRow, @NonNull ColorCounter counter) {
+        int width = mBitmap.getWidth();
+        int[] pixels = PixelsBuffer.obtain(width);
+        if(mStep > 1) {
+            for(int row = fromRow; row < toRow; row++) {
+                mBitmap.getPixels(pixels, 0, width, 0, mY0 + row * mStep, width, 1);
+                //Compacting in place, the destination never overtakes the source
+                int n = 0;
+                for(int x = mX0; x < width; x += mStep)
+                    pixels[n++] = pixels[x];
+                counter.incrementAll(pixels, 0, n);
+            }
+            return;
+        }
+        int rowsPerStrip = pixels.length / width;
+        for(int y = fromRow; y < toRow; y += rowsPerStrip) {
+            int rows = Math.min(rowsPerStrip, toRow - y);
+            mBitmap.getPixels(pixels, 0, width, 0, y, width, rows);
+            counter.incrementAll(pixels, 0, width * rows);
+        }
+    }
+
+    @Override
+    public void countSpan(int y, int fromX, int toX, int step, @NonNull ColorCounter counter) {
+        int width = toX - fromX;
+        int[] pixels = PixelsBuffer.obtain(width);
+        mBitmap.getPixels(pixels, 0, width, fromX, y, width, 1);
+        int n = width;
+        if(step > 1) {
+            n = 0;
+            for(int x = 0; x < width; x += step)
+                pixels[n++] = pixels[x];
+        }
+        counter.incrementAll(pixels, 0, n);
+    }
+}
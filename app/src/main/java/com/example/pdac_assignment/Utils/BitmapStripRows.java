@@ -0,0 +1,88 @@
+package com.example.pdac_assignment.Utils;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import com.example.pdac_assignment.core.ColorCounter;
+import com.example.pdac_assignment.core.PixelRows;
+import com.example.pdac_assignment.core.PixelSpans;
+import com.example.pdac_assignment.core.PixelsBuffer;
+
+/**
+ * Rows of an image decoded strip by strip (see ConfigBuilder.setStripStreaming): rows and spans are of the whole
+ * decoded image, but only the rows of the current strip, held by the strip bitmap, can be counted.
+ * Strip bitmap may be taller than the strip, its rows below the strip are not read
+ */
+class BitmapStripRows implements PixelRows, PixelSpans {
+    //Decoded image size
+    private final int mWidth;
+    private final int mHeight;
+    private Bitmap mStrip = null;
+    //Image row of the strip bitmap top row
+    private int mStripTop = 0;
+
+    BitmapStripRows(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * @param strip bitmap holding rows from top on, at least as wide as the image
+     * @param top
+     */
+    void setStrip(@NonNull Bitmap strip, int top){
+        mStrip = strip;
+        mStripTop = top;
+    }
+
+    @Override
+    public int getRowsCount() {
+        return mHeight;
+    }
+
+    @Override
+    public int getRowWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getPixelsCount() {
+        return mWidth * mHeight;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void countRows(int fromRow, int toRow, @NonNull ColorCounter counter) {
+        int[] pixels = PixelsBuffer.obtain(mWidth);
+        int rowsPerStrip = pixels.length / mWidth;
+        for(int y = fromRow; y < toRow; y += rowsPerStrip) {
+            int rows = Math.min(rowsPerStrip, toRow - y);
+            mStrip.getPixels(pixels, 0, mWidth, 0, y - mStripTop, mWidth, rows);
+            counter.incrementAll(pixels, 0, mWidth * rows);
+        }
+    }
+
+    @Override
+    public void countSpan(int y, int fromX, int toX, int step, @NonNull ColorCounter counter) {
+        int width = toX - fromX;
+        int[] pixels = PixelsBuffer.obtain(width);
+        mStrip.getPixels(pixels, 0, width, fromX, y - mStripTop, width, 1);
+        int n = width;
+        if(step > 1) {
+            n = 0;
+            for(int x = 0; x < width; x += step)
+                pixels[n++] = pixels[x];
+        }
+        counter.incrementAll(pixels, 0, n);
+    }
+}
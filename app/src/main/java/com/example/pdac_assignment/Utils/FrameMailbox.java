@@ -0,0 +1,64 @@
+package com.example.pdac_assignment.Utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single slot hand-off of the latest frame from the camera thread to the worker.
+ * Posting never blocks: the newest frame replaces the pending one, which is returned to the caller
+ * so its buffer can be recycled. The slot is a single atomic swap on both sides, the worker parks while the slot is empty.
+ * Any thread may post and several workers may take (see FramePipeline), each frame is taken once
+ * @param <T> frame type
+ */
+public class FrameMailbox<T> {
+    private final AtomicReference<T> mSlot = new AtomicReference<>();
+    //Workers parked in take
+    private final ConcurrentLinkedQueue<Thread> mWaiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Puts the frame into the slot, wakes up waiting workers, one of them takes it
+     * @param frame
+     * @return replaced (dropped) frame, null if the slot was empty
+     */
+    public T post(T frame){
+        if(frame == null)
+            throw new NullPointerException("Frame is null");
+        T replaced = mSlot.getAndSet(frame);
+        for(Thread waiter : mWaiters)
+            LockSupport.unpark(waiter);
+        return replaced;
+    }
+
+    /**
+     * Takes the pending frame, waits for one if the slot is empty
+     * @return
+     * @throws InterruptedException
+     */
+    public T take() throws InterruptedException{
+        T frame = mSlot.getAndSet(null);
+        if(frame != null)
+            return frame;
+        Thread current = Thread.currentThread();
+        mWaiters.add(current);
+        try {
+            //Slot is checked after the waiter is published, so a frame posted meanwhile is not missed
+            while ((frame = mSlot.getAndSet(null)) == null) {
+                if(Thread.interrupted())
+                    throw new InterruptedException();
+                LockSupport.park(this);
+            }
+            return frame;
+        }finally {
+            mWaiters.remove(current);
+        }
+    }
+
+    /**
+     * Takes the pending frame without waiting
+     * @return null if the slot is empty
+     */
+    public T poll(){
+        return mSlot.getAndSet(null);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.pdac_assignment.Utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged frames processing: every stage runs on its own workers, so stage N of a frame
+ * runs at the same time as stage N+1 of the previous frame.
+ * Frames enter through a latest-frame mailbox (submitting never blocks, pending frame is replaced),
+ * stages are connected by bounded queues, a full queue holds back the previous stage workers.
+ * Frames are numbered on submit, stage outputs are handed to the next stage in submit order:
+ * a frame finished by one worker after a newer frame finished by another one is dropped as stale.
+ * The last stage has no hand-off, it should have a single worker if its side effects must be ordered
+ * @param <I> frame type
+ */
+public class FramePipeline<I> {
+    private static final String TAG = "FramePipeline";
+    //Stop waits this long for the workers to leave their current frames
+    private static final long STOP_TIMEOUT_MILLIS = 2000;
+
+    // Stage processing function, the stage owns its input: it releases the input resources or hands them over with the output
+    public interface Stage<I, O>{
+        /**
+         * @param input
+         * @return output handed to the next stage, null if the frame ends at this stage
+         * @throws Exception the frame is logged and skipped
+         */
+        O process(I input) throws Exception;
+    }
+
+    // Receiver of frames dropped by the pipeline (replaced on submit, stale or pending on stop)
+    public interface DropListener{
+        /**
+         * @param frame submitted frame or an output of a stage
+         */
+        void onDropped(Object frame);
+    }
+
+    private final FrameMailbox<Item> mInput = new FrameMailbox<>();
+    private final ArrayList<StageRunner> mStages;
+    private final DropListener mDropListener;
+    private final AtomicLong mSequence = new AtomicLong();
+    private ExecutorService mExecutor = null;
+    //Set by stop, frames submitted afterwards are dropped right away
+    private volatile boolean mStopped = false;
+
+    private FramePipeline(ArrayList<StageRunner> stages, DropListener dropListener) {
+        mStages = stages;
+        mDropListener = dropListener;
+    }
+
+    /**
+     * @param <I> frame type
+     * @return builder of pipeline with no stages
+     */
+    public static <I> Builder<I, I> builder(){
+        return new Builder<>(new ArrayList<StageRunner>());
+    }
+
+    //Builder helper class for adding pipeline stages, O is the output type of the last added stage
+    public static class Builder<I, O>{
+        private final ArrayList<StageRunner> mStages;
+
+        private Builder(ArrayList<StageRunner> stages) {
+            mStages = stages;
+        }
+
+        /**
+         * Appends stage to the pipeline
+         * @param name stage threads name
+         * @param workers amount of threads processing frames of this stage
+         * @param stage
+         * @param <N> stage output type
+         * @return
+         */
+        public <N> Builder<I, N> addStage(@NonNull String name, int workers, @NonNull Stage<? super O, N> stage){
+            if(workers < 1)
+                throw new IllegalArgumentException("Stage must have at least one worker: " + workers);
+            mStages.add(new StageRunner(name, workers, stage));
+            return new Builder<>(mStages);
+        }
+
+        /**
+         * @param dropListener null if dropped frames hold no resources
+         * @return
+         */
+        public FramePipeline<I> build(DropListener dropListener){
+            if(mStages.isEmpty())
+                throw new IllegalStateException("Pipeline has no stages");
+            return new FramePipeline<>(mStages, dropListener);
+        }
+    }
+
+    /**
+     * Starts stages workers
+     */
+    public synchronized void start(){
+        if(mExecutor != null)
+            throw new IllegalStateException("Pipeline is already started");
+        int workers = 0;
+        for(StageRunner stage : mStages)
+            workers += stage.mWorkers;
+        mStopped = false;
+        mExecutor = Executors.newFixedThreadPool(workers);
+        for(int index = 0; index < mStages.size(); index++)
+            for(int worker = 0; worker < mStages.get(index).mWorkers; worker++)
+                mExecutor.execute(new Worker(index, worker));
+    }
+
+    /**
+     * Interrupts stages workers and waits (for a bounded time) until they leave their current frames,
+     * so the frames sources can be released afterwards. Pending frames and frames submitted from now on are dropped
+     */
+    public synchronized void stop(){
+        mStopped = true;
+        if(mExecutor != null) {
+            mExecutor.shutdownNow();
+            try {
+                if(!mExecutor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                    Log.w(TAG, "Workers did not stop within " + STOP_TIMEOUT_MILLIS + " ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mExecutor = null;
+        }
+        Item item = mInput.poll();
+        if(item != null)
+            drop(item);
+        for(StageRunner stage : mStages)
+            while ((item = stage.mQueue.poll()) != null)
+                drop(item);
+    }
+
+    /**
+     * Submits frame to the first stage, pending (not yet taken) frame is replaced and dropped.
+     * Frame submitted to the stopped pipeline is dropped
+     * @param frame
+     */
+    public void submit(@NonNull I frame){
+        if(mStopped) {
+            drop(new Item(0, frame));
+            return;
+        }
+        Item replaced = mInput.post(new Item(mSequence.incrementAndGet(), frame));
+        if(replaced != null)
+            drop(replaced);
+        //Stop may have drained the mailbox right before the frame was posted
+        if(mStopped && (replaced = mInput.poll()) != null)
+            drop(replaced);
+    }
+
+    private void drop(Item item){
+        if(mDropListener != null)
+            mDropListener.onDropped(item.mValue);
+    }
+
+    // Helper function, hands stage output to the next stage queue in frames order
+    private void handOff(int index, Item item) throws InterruptedException{
+        if(index + 1 == mStages.size())
+            return;
+        StageRunner stage = mStages.get(index);
+        synchronized (stage) {
+            if(item.mSequence < stage.mLastSequence) {
+                drop(item);
+                return;
+            }
+            stage.mLastSequence = item.mSequence;
+            try {
+                //Put is kept under the monitor so frames enter the next stage in order
+                mStages.get(index + 1).mQueue.put(item);
+            }catch (InterruptedException e){
+                drop(item);
+                throw e;
+            }
+        }
+    }
+
+    // Frame (or stage output) with its submit sequence number
+    private static class Item{
+        final long mSequence;
+        final Object mValue;
+
+        Item(long sequence, Object value) {
+            mSequence = sequence;
+            mValue = value;
+        }
+    }
+
+    // Stage with its input queue, the first stage takes frames from the pipeline mailbox instead
+    private static class StageRunner{
+        final String mName;
+        final int mWorkers;
+        final Stage<Object, Object> mStage;
+        final ArrayBlockingQueue<Item> mQueue;
+        //Sequence of the last frame handed to the next stage, guarded by the runner
+        long mLastSequence = 0;
+
+        @SuppressWarnings("unchecked")
+        StageRunner(String name, int workers, Stage<?, ?> stage) {
+            mName = name;
+            mWorkers = workers;
+            mStage = (Stage<Object, Object>) stage;
+            mQueue = new ArrayBlockingQueue<>(workers);
+        }
+    }
+
+    private class Worker implements Runnable{
+        private final int mIndex;
+        private final int mWorker;
+
+        Worker(int index, int worker) {
+            mIndex = index;
+            mWorker = worker;
+        }
+
+        @Override
+        public void run() {
+            StageRunner stage = mStages.get(mIndex);
+            Thread.currentThread().setName(stage.mName + "-" + mWorker);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Item item = mIndex == 0 ? mInput.take() : stage.mQueue.take();
+                    Object output;
+                    try {
+                        output = stage.mStage.process(item.mValue);
+                    }catch (InterruptedException e){
+                        throw e;
+                    }catch (Exception e){
+                        Log.e(TAG, "Stage " + stage.mName + " failed to process frame " + item.mSequence, e);
+                        continue;
+                    }
+                    if(output != null)
+                        handOff(mIndex, new Item(item.mSequence, output));
+                }
+            } catch (InterruptedException e) {
+                Log.d(TAG, "Stage " + stage.mName + " interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.pdac_assignment.Utils;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import androidx.annotation.NonNull;
+
+import com.example.pdac_assignment.core.ColorCounting;
+import com.example.pdac_assignment.core.GridColorCounter;
+import com.example.pdac_assignment.core.PixelSpans;
+import com.example.pdac_assignment.core.Quantization;
+
+/**
+ * Dominant colors of every tile of a columns x rows grid laid over a frame (or over its region of interest).
+ * The frame is decoded once and all the tiles are filled during a single traversal of its pixels
+ * into quantized per tile bins (see GridColorCounter), so memory is bounded by tiles by bins.
+ * Every tile is a Histogram with its own top colors and shares.
+ * Config quantization is used (DEFAULT_QUANTIZATION if it is not set). Options tiles are not counted with
+ * (palette, octree, color space, sampling, strip streaming and elliptical region mask) are rejected
+ */
+public class GridHistogram {
+    public static final Quantization DEFAULT_QUANTIZATION = Quantization.RGB444;
+
+    private final int mColumns;
+    private final int mRows;
+    //Tiles histograms, row by row
+    private final Histogram[] mTiles;
+
+    private GridHistogram(int columns, int rows, Histogram[] tiles) {
+        mColumns = columns;
+        mRows = rows;
+        mTiles = tiles;
+    }
+
+    public int getColumns(){
+        return mColumns;
+    }
+
+    public int getRows(){
+        return mRows;
+    }
+
+    /**
+     * @param column 0 is the left column
+     * @param row 0 is the top row
+     * @return histogram of the tile, shares are shares of the tile pixels
+     */
+    public Histogram getTile(int column, int row){
+        if(column < 0 || column >= mColumns || row < 0 || row >= mRows)
+            throw new IndexOutOfBoundsException("Tile " + column + ", " + row + " of " + mColumns + "x" + mRows);
+        return mTiles[row * mColumns + column];
+    }
+
+    /**
+     * Factory function returns grid histogram of raw camera frame (NV21 or YV12)
+     * @param data
+     * @param imageFormat
+     * @param width
+     * @param height
+     * @param columns
+     * @param rows
+     * @param config scale by (or boundary) is used as pixels subsampling step
+     * @return
+     * @throws IllegalArgumentException unsupported config option or invalid frame
+     */
+    public static GridHistogram instantiateFromYuv(byte[] data, int imageFormat, int width, int height, int columns, int rows,
+                                                   Histogram.Config config) throws IllegalArgumentException{
+        if(config == null)
+            config = new Histogram.Config();
+        checkConfig(config);
+        int step = Histogram.stepOf(width, height, config);
+        return gridOf(Histogram.createYuvFrame(data, imageFormat, width, height, step), step, columns, rows, config, true);
+    }
+
+    /**
+     * Factory function returns grid histogram of YUV_420_888 camera2 image, the image is not closed by this function
+     * @param image
+     * @param columns
+     * @param rows
+     * @param config scale by (or boundary) is used as pixels subsampling step
+     * @return
+     * @throws IllegalArgumentException unsupported config option or invalid frame
+     */
+    public static GridHistogram instantiate(@NonNull Image image, int columns, int rows, Histogram.Config config) throws IllegalArgumentException{
+        if(config == null)
+            config = new Histogram.Config();
+        checkConfig(config);
+        int step = Histogram.stepOf(image.getWidth(), image.getHeight(), config);
+        return gridOf(Histogram.createImageFrame(image, step), step, columns, rows, config, true);
+    }
+
+    /**
+     * Factory function returns grid histogram of encoded image (JPEG, PNG...)
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param columns
+     * @param rows
+     * @param config
+     * @return
+     * @throws IllegalArgumentException unsupported config option or invalid frame
+     */
+    public static GridHistogram instantiate(byte[] bytes, int offset, int length, int columns, int rows,
+                                            Histogram.Config config) throws IllegalArgumentException{
+        if(config == null)
+            config = new Histogram.Config();
+        checkConfig(config);
+        Bitmap bitmap = null;
+        try {
+            bitmap = Histogram.prepareHistogramBitmap(bytes, offset, length, config);
+        }catch (Exception e){
+            throw new IllegalArgumentException("Unable to decode bytes", e);
+        }
+        //Decoded bitmap holds the region of interest only
+        GridHistogram grid = gridOf(new BitmapPixelRows(bitmap), 1, columns, rows, config, false);
+        Histogram.releaseHistogramBitmap(bitmap, config);
+        return grid;
+    }
+
+    // Helper function, options that the single pass tiles counting does not apply are rejected instead of being ignored
+    private static void checkConfig(@NonNull Histogram.Config config) throws IllegalArgumentException{
+        if(config.palette_colors != null)
+            throw new IllegalArgumentException("Grid histogram does not support palette");
+        if(config.octree_colors != null)
+            throw new IllegalArgumentException("Grid histogram does not support octree");
+        if(config.color_space != null)
+            throw new IllegalArgumentException("Grid histogram does not support color space binning");
+        if(config.sampling_step != null)
+            throw new IllegalArgumentException("Grid histogram does not support sampling");
+        if(config.strip_rows != null)
+            throw new IllegalArgumentException("Grid histogram does not support strip streaming");
+        if(config.region != null && config.region_elliptical)
+            throw new IllegalArgumentException("Grid histogram does not support elliptical region");
+    }
+
+    // Helper function that counts all the tiles of the frame (or of its region of interest) in a single pass
+    private static GridHistogram gridOf(@NonNull PixelSpans frame, int step, int columns, int rows,
+                                        @NonNull Histogram.Config config, boolean applyRegion){
+        GridColorCounter counter = ColorCounting.obtainGridCounter(columns, rows,
+                config.quantization != null ? config.quantization : DEFAULT_QUANTIZATION);
+        if(applyRegion && config.region != null) {
+            int[] bounds = config.region.boundsOf(frame.getWidth(), frame.getHeight());
+            counter.count(frame, bounds[0], bounds[1], bounds[2], bounds[3], step);
+        }else
+            counter.count(frame, step);
+        Histogram[] tiles = new Histogram[columns * rows];
+        for(int row = 0; row < rows; row++)
+            for(int column = 0; column < columns; column++)
+                tiles[row * columns + column] = Histogram.createHistogram(counter.getTile(column, row),
+                        counter.getTilePixelsCount(column, row));
+        return new GridHistogram(columns, rows, tiles);
+    }
+}
@@ -2,28 +2,92 @@ package com.example.pdac_assignment.Utils;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.example.pdac_assignment.core.ColorCountTable;
+import com.example.pdac_assignment.core.ColorCounter;
+import com.example.pdac_assignment.core.ColorCounting;
+import com.example.pdac_assignment.core.ColorSpace;
+import com.example.pdac_assignment.core.PaletteExtraction;
+import com.example.pdac_assignment.core.PixelLattice;
+import com.example.pdac_assignment.core.PixelRows;
+import com.example.pdac_assignment.core.PixelSpans;
+import com.example.pdac_assignment.core.Quantization;
+import com.example.pdac_assignment.core.RegionOfInterest;
+import com.example.pdac_assignment.core.RegionPixelRows;
+import com.example.pdac_assignment.core.SampledCounting;
+import com.example.pdac_assignment.core.TopColorsHeap;
+import com.example.pdac_assignment.core.YuvPixelRows;
+import com.example.pdac_assignment.core.YuvPlanesPixelRows;
+
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Objects;
 
 /**
- * Histogram factory class is responsible for popular colors evaluation
+ * Histogram factory class is responsible for popular colors evaluation.
+ * Android images (Bitmap, camera frames) are adapted to pixel rows and counted by the platform independent core
  */
 public class Histogram {
     //Default scaling factor is empirically discovered (see androidTest)
     public static final int DEFAULT_SCALING_FACTOR = 4;
+    //95% confidence interval
+    public static final float DEFAULT_SAMPLING_CONFIDENCE = 1.96F;
+    public static final int DEFAULT_SAMPLING_TOP_COLORS = 5;
+    //Palette k-means refinement caps, a few iterations are enough to settle median cut boxes
+    public static final int DEFAULT_PALETTE_ITERATIONS = 4;
+    public static final long DEFAULT_PALETTE_TIME_MILLIS = 4;
+    //Neighbour top colors which shares are known within this error are not sampled further
+    private static final double SAMPLING_PRECISION = 0.0025;
+    //Pooled decoding bitmap is replaced once it is this many times larger than the decoded frame
+    private static final int DECODE_BITMAP_SHRINK = 4;
+    //Strip height that keeps a strip of a large photo within a few hundred kilobytes
+    public static final int DEFAULT_STRIP_ROWS = 64;
+    //Per thread decoding bitmap reused across frames (see ConfigBuilder.setBitmapReuse)
+    private static final ThreadLocal<Bitmap> sDecodeBitmap = new ThreadLocal<>();
 
     //Config is a helper class for setting scaling factor or boundary size for image resizing
-    private static class Config{
+    static class Config{
         public Integer max_boundary = null;
         public Integer scale_by = DEFAULT_SCALING_FACTOR;
+        //Exact 24 bit colors are counted unless quantization is set
+        public Quantization quantization = null;
+        //Amount of threads counting pixels, 1 for sequential counting
+        public int parallelism = 1;
+        //Octree leaves budget, null if colors are counted by a table (or bins)
+        public Integer octree_colors = null;
+        //Perceptual binning space, null if colors are counted by RGB (see quantization)
+        public ColorSpace color_space = null;
+        //Encoded images are decoded into a per thread pooled bitmap instead of a new one
+        public boolean reuse_bitmap = false;
+        //Encoded images are decoded with 16 bit pixels
+        public boolean decode_rgb565 = false;
+        //Region of interest, null if the whole image is counted
+        public RegionOfInterest region = null;
+        //Only the ellipse inscribed into the region is counted
+        public boolean region_elliptical = false;
+        //Encoded images are decoded and counted by strips of this many decoded rows, null if they are decoded whole
+        public Integer strip_rows = null;
+        //Sampling cells size, null if all the (scaled) pixels are counted
+        public Integer sampling_step = null;
+        //Confidence interval z-score of sampled shares
+        public float sampling_confidence = DEFAULT_SAMPLING_CONFIDENCE;
+        //Amount of top colors which ranking has to be settled before sampling stops
+        public int sampling_top_colors = DEFAULT_SAMPLING_TOP_COLORS;
+        //Palette size, null if counted colors are reported as they are
+        public Integer palette_colors = null;
+        //K-means refinement caps of the palette
+        public int palette_iterations = DEFAULT_PALETTE_ITERATIONS;
+        public long palette_time_millis = DEFAULT_PALETTE_TIME_MILLIS;
 
         public boolean isPredefinedScaleBy(){
             return scale_by != null;
@@ -35,6 +99,7 @@ public class Histogram {
         public ConfigBuilder setMaxBoundary(int boundary){
             config.scale_by = null;
             config.max_boundary = boundary;
+            config.sampling_step = null;
             return this;
         }
 
@@ -44,13 +109,167 @@ public class Histogram {
         public ConfigBuilder setScaleBy(int scaleBy){
             config.scale_by = scaleBy;
             config.max_boundary = null;
+            config.sampling_step = null;
+
+            return this;
+        }
+
+        /**
+         * Full resolution image is counted by stratified sampling instead of scaling: every pass counts a single pixel
+         * of every step x step cell and counting stops once the ranking of top colors is statistically settled.
+         * Shares are estimates then, see getColorShareError
+         * @param step cells size, up to step * step passes are counted
+         */
+        public ConfigBuilder setSampling(int step){
+            if(step < 1)
+                throw new IllegalArgumentException("Sampling step must be positive: " + step);
+            config.scale_by = 1;
+            config.max_boundary = null;
+            config.sampling_step = step;
+            return this;
+        }
+
+        /**
+         * @param z confidence interval z-score of sampled shares, DEFAULT_SAMPLING_CONFIDENCE is 95%
+         * @param topColors amount of top colors which ranking has to be settled
+         */
+        public ConfigBuilder setSamplingConfidence(float z, int topColors){
+            if(z <= 0 || topColors < 1)
+                throw new IllegalArgumentException("Invalid sampling confidence " + z + " for " + topColors + " colors");
+            config.sampling_confidence = z;
+            config.sampling_top_colors = topColors;
+            return this;
+        }
+
+        /**
+         * Pixels are quantized before counting, resulting colors represent the bins
+         * @param quantization null for exact colors counting
+         */
+        public ConfigBuilder setQuantization(Quantization quantization){
+            config.quantization = quantization;
+            return this;
+        }
+
+        /**
+         * Pixels are split into tiles that are counted on a ForkJoin pool of given parallelism,
+         * the result is identical to sequential counting
+         * @param parallelism 1 for sequential counting
+         */
+        public ConfigBuilder setParallelism(int parallelism){
+            if(parallelism < 1)
+                throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+            config.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Pixels are streamed into an octree quantizer of fixed memory, close colors are merged
+         * as soon as the leaves budget is exceeded, resulting colors are merged colors means.
+         * Quantization still applies to parallel workers counters
+         * @param maxColors leaves budget, null for table (or bins) counting
+         */
+        public ConfigBuilder setOctree(Integer maxColors){
+            if(maxColors != null && maxColors < 1)
+                throw new IllegalArgumentException("Octree must have at least one leaf: " + maxColors);
+            config.octree_colors = maxColors;
+            return this;
+        }
+
+        /**
+         * Pixels are binned by their HSV or CIELAB coordinates through a precomputed 32x32x32 lookup table,
+         * so a perceptual color is counted as a single bin instead of thousands of RGB keys.
+         * Resulting colors are bins centroids (mean colors of the binned pixels).
+         * Parallel workers bin into the same color space from the original pixels, so quantization is ignored
+         * @param colorSpace null for RGB counting
+         */
+        public ConfigBuilder setColorSpace(ColorSpace colorSpace){
+            config.color_space = colorSpace;
+            return this;
+        }
+
+        /**
+         * Counted colors are reduced to a palette of representative colors (median cut on a coarse histogram,
+         * refined by k-means), colors shares are shares of pixels represented by palette colors
+         * @param colors palette size, null for counted colors as they are
+         */
+        public ConfigBuilder setPalette(Integer colors){
+            if(colors != null && colors < 1)
+                throw new IllegalArgumentException("Palette must have at least one color: " + colors);
+            config.palette_colors = colors;
+            return this;
+        }
+
+        /**
+         * @param maxIterations k-means iterations cap, 0 for median cut palette
+         * @param maxMillis k-means time budget
+         */
+        public ConfigBuilder setPaletteRefinement(int maxIterations, long maxMillis){
+            if(maxIterations < 0 || maxMillis < 0)
+                throw new IllegalArgumentException("Invalid palette refinement caps " + maxIterations + ", " + maxMillis);
+            config.palette_iterations = maxIterations;
+            config.palette_time_millis = maxMillis;
+            return this;
+        }
+        /**
+         * Encoded images are decoded into a per thread pooled mutable bitmap (inBitmap) instead of a new bitmap per frame,
+         * the pooled bitmap follows the analysis resolution
+         * @param reuse
+         */
+        public ConfigBuilder setBitmapReuse(boolean reuse){
+            config.reuse_bitmap = reuse;
+            return this;
+        }
+
+        /**
+         * Encoded images are decoded as RGB_565, which halves decoded pixels memory bandwidth.
+         * Decoded colors keep 5-6-5 high bits only, so it requires quantization of no more than RGB565 precision
+         * (or color space binning, which looks up 5 high bits of every channel)
+         * @param rgb565
+         */
+        public ConfigBuilder setDecodeRgb565(boolean rgb565){
+            config.decode_rgb565 = rgb565;
+            return this;
+        }
+
+        /**
+         * Only the region of interest is decoded (encoded images are decoded by BitmapRegionDecoder) and counted,
+         * so the cost per frame is proportional to the region area. Shares are shares of the region pixels
+         * @param region relative to the image size (0..1), null for the whole image
+         * @param elliptical center weighted mask: only the ellipse inscribed into the region is counted
+         */
+        public ConfigBuilder setRegionOfInterest(RegionOfInterest region, boolean elliptical){
+            config.region = region;
+            config.region_elliptical = elliptical;
+            return this;
+        }
 
+        /**
+         * Encoded images are decoded by BitmapRegionDecoder strip by strip into a single strip bitmap,
+         * every strip is counted as soon as it is decoded, so peak memory is of a strip instead of the whole (scaled) image.
+         * Streams are read once, they need not support mark and reset. Strips are counted sequentially, sampling is not supported
+         * @param rows decoded rows of a strip (see DEFAULT_STRIP_ROWS), null for decoding the whole image
+         */
+        public ConfigBuilder setStripStreaming(Integer rows){
+            if(rows != null && rows < 1)
+                throw new IllegalArgumentException("Strip must have at least one row: " + rows);
+            config.strip_rows = rows;
             return this;
         }
+
         public Config build(){
+            if(config.color_space != null && config.octree_colors != null)
+                throw new IllegalStateException("Color space binning can not be combined with octree");
+            if(config.strip_rows != null && config.sampling_step != null)
+                throw new IllegalStateException("Strip streaming can not be combined with sampling");
+            if(config.decode_rgb565 && config.color_space == null && !fitsRgb565(config.quantization))
+                throw new IllegalStateException("RGB_565 decoding requires quantization of at most RGB565 precision: " + config.quantization);
             return config;
         }
 
+        private static boolean fitsRgb565(Quantization quantization){
+            return quantization != null && quantization.redBits <= 5 && quantization.greenBits <= 6 && quantization.blueBits <= 5;
+        }
+
     }
     /**
      * Color class the resulting color item that involved in calculations
@@ -58,14 +277,15 @@ public class Histogram {
      */
     public static class Color{
         public final int color;
-        private int mCount = 1;
+        private final int mCount;
 
 
         public Color(int color) {
-            this.color = color;
+            this(color, 1);
         }
-        private void incrementCount(){
-            mCount+=1;
+        private Color(int color, int count) {
+            this.color = color;
+            this.mCount = count;
         }
         public int getCount(){
             return mCount;
@@ -97,35 +317,152 @@ public class Histogram {
     private Histogram(){
     }
 
-    private Histogram(Color[] colors, int itemsCount){
-        mColors = colors;
+    private Histogram(ColorCounter counter, int itemsCount){
+        this(counter, itemsCount, itemsCount, 0);
+    }
+
+    private Histogram(ColorCounter counter, int itemsCount, int populationCount, float confidence){
+        mCounter = counter;
         mItemsCount = itemsCount;
+        mPopulationCount = populationCount;
+        mConfidence = confidence;
     }
-    
-    //Resulting array of total unique colors of image
+
+    //Counting backend, color -> occurrences
+    private ColorCounter mCounter;
+    //Resulting array of total unique colors of image, created only when requested
     private Color[] mColors;
     private boolean mSorted = false;
+    //Packed entries (see TopColorsHeap) of the most popular colors selected without full sorting,
+    //the longest requested prefix is kept
+    private long[] mTopEntries;
+    //Color objects of the top entries, created only when requested
+    private Color[] mTopColors;
     //Total pixels count in image
     private int mItemsCount = 0;
+    //Pixels count the counted ones are sampled from, equals to items count unless sampling is used
+    private int mPopulationCount = 0;
+    //Confidence interval z-score of sampled shares
+    private float mConfidence = 0;
 
+    /**
+     * Returns all the colors sorted from the most popular one.
+     * Full sorting is expensive for images with many unique colors, prefer getTopColors
+     * @return
+     */
     public Color[] getSortedColors(){
         if(!mSorted){
-            Arrays.sort(mColors, new Comparator<Color>() {
+            final long[] entries = new long[mCounter.size()];
+            mCounter.forEach(new ColorCounter.EntryVisitor() {
+                private int mIndex = 0;
                 @Override
-                public int compare(Color color, Color color2) {
-                    return color2.mCount - color.mCount;
+                public void visit(int color, int count) {
+                    entries[mIndex++] = TopColorsHeap.pack(color, count);
                 }
             });
+            Arrays.sort(entries);
+            TopColorsHeap.reverse(entries);
+            mColors = toColors(entries);
             mSorted = true;
         }
         return mColors;
     }
 
+    /**
+     * Returns k most popular colors (or less if image has less unique colors) sorted from the most popular one.
+     * Colors are selected by bounded heap, only k Color objects are created
+     * @param k
+     * @return
+     */
+    public Color[] getTopColors(int k){
+        if(mSorted)
+            return Arrays.copyOf(mColors, Math.min(k, mColors.length));
+        long[] entries = selectTopEntries(k);
+        if(mTopColors == null || mTopColors.length != entries.length)
+            mTopColors = toColors(entries);
+        return mTopColors.length <= k ? mTopColors : Arrays.copyOf(mTopColors, k);
+    }
+
+    /**
+     * Copies k most popular colors (or less if image has less unique colors) and their counts, sorted from the most popular one.
+     * Nothing is allocated if the colors are selected already (see TemporalHistogram.snapshot)
+     * @param k
+     * @param colors output, at least k items
+     * @param counts output, at least k items
+     * @return amount of copied colors
+     */
+    public int getTopColors(int k, @NonNull int[] colors, @NonNull int[] counts){
+        if(mSorted) {
+            int n = Math.min(k, mColors.length);
+            for(int i = 0; i < n; i++) {
+                colors[i] = mColors[i].color;
+                counts[i] = mColors[i].getCount();
+            }
+            return n;
+        }
+        long[] entries = selectTopEntries(k);
+        int n = Math.min(k, entries.length);
+        for(int i = 0; i < n; i++) {
+            colors[i] = TopColorsHeap.colorOf(entries[i]);
+            counts[i] = TopColorsHeap.countOf(entries[i]);
+        }
+        return n;
+    }
+
+    // Helper function, selects top entries by bounded heap unless a long enough prefix is selected already
+    private long[] selectTopEntries(int k){
+        if(mTopEntries == null || (mTopEntries.length < k && mTopEntries.length < mCounter.size())) {
+            TopColorsHeap heap = new TopColorsHeap(k);
+            mCounter.forEach(heap);
+            mTopEntries = heap.toSortedArray();
+        }
+        return mTopEntries;
+    }
+
+    // Helper function that creates Color objects out of packed table entries
+    private static Color[] toColors(long[] entries){
+        Color[] colors = new Color[entries.length];
+        for(int i = 0; i < entries.length; i++)
+            colors[i] = new Color(TopColorsHeap.colorOf(entries[i]), TopColorsHeap.countOf(entries[i]));
+        return colors;
+    }
+
     public int getTotalColorsCount() {
         return mItemsCount;
     }
+
+    // Helper function, counted colors (see TemporalHistogram.accumulate)
+    ColorCounter getCounter(){
+        return mCounter;
+    }
+
     public float getColorShare(@NonNull Color color){
-        return (color.getCount()/(float) mItemsCount) * 100F;
+        return getColorShare(color.getCount());
+    }
+
+    /**
+     * @param count color count (see getTopColors(int, int[], int[]))
+     * @return color share in percents
+     */
+    public float getColorShare(int count){
+        return (count/(float) mItemsCount) * 100F;
+    }
+
+    /**
+     * Returns estimated error of color share (confidence interval half width) in percents,
+     * 0 unless the histogram is sampled (see ConfigBuilder.setSampling)
+     * @param color
+     * @return
+     */
+    public float getColorShareError(@NonNull Color color){
+        return (float) SampledCounting.shareError(color.getCount(), mItemsCount, mPopulationCount, mConfidence) * 100F;
+    }
+
+    /**
+     * @return true if all the pixels were counted, false if sampling stopped earlier
+     */
+    public boolean isExact(){
+        return mItemsCount >= mPopulationCount;
     }
 
     public static Histogram instantiateHistogram(byte[] bytes, int offset, int length){
@@ -141,17 +478,25 @@ public class Histogram {
      * @return Histogram
      * @throws IllegalArgumentException
      */
+    @SuppressWarnings("deprecation")
     public static Histogram instantiateHistogram(byte[] bytes, int offset, int length, Config config) throws IllegalArgumentException{
         if(config == null)
             config = new Config();
+        if(config.strip_rows != null) {
+            try {
+                return histogramOfStrips(BitmapRegionDecoder.newInstance(bytes, offset, length, false), config);
+            }catch (IOException e){
+                throw new IllegalArgumentException("Unable to decode bytes", e);
+            }
+        }
         Bitmap bitmap = null;
         try {
             bitmap = prepareHistogramBitmap(bytes,offset, length, config);
         }catch (Exception e){
             throw new IllegalArgumentException("Unable to decode bytes", e);
         }
-        Histogram histogram = new Histogram(prepareColorsFromHistogramBitmap(bitmap),bitmap.getHeight() * bitmap.getWidth());
-        bitmap.recycle();
+        Histogram histogram = histogramOf(createBitmapRows(bitmap, config), config);
+        releaseHistogramBitmap(bitmap, config);
         return histogram;
     }
     public static Histogram instantiateHistogram(InputStream is){
@@ -165,36 +510,309 @@ public class Histogram {
      * @return
      * @throws IllegalArgumentException
      */
+    @SuppressWarnings("deprecation")
     public static Histogram instantiateHistogram(InputStream is, Config config) throws IllegalArgumentException{
         if(config == null)
             config = new Config();
+        if(config.strip_rows != null) {
+            try {
+                return histogramOfStrips(BitmapRegionDecoder.newInstance(is, false), config);
+            }catch (IOException e){
+                throw new IllegalArgumentException("Unable to decode stream", e);
+            }
+        }
         Bitmap bitmap = null;
         try {
             bitmap = prepareHistogramBitmap(is,config);
         }catch (Exception e){
             throw new IllegalArgumentException("Unable to decode stream", e);
         }
-        Histogram histogram = new Histogram(prepareColorsFromHistogramBitmap(bitmap),bitmap.getHeight() * bitmap.getWidth());
-        bitmap.recycle();
+        Histogram histogram = histogramOf(createBitmapRows(bitmap, config), config);
+        releaseHistogramBitmap(bitmap, config);
         return histogram;
     }
 
     /**
-     * Calculates the histogram map out of Bitmap object
+     * Creates rows source of bitmap returned by prepareHistogramBitmap, the bitmap holds the region of interest only
+     * so just the elliptical mask is left to apply
      * @param bitmap
+     * @param config
      * @return
      */
-    private static Color[] prepareColorsFromHistogramBitmap(@NonNull Bitmap bitmap){
-        HashMap<Integer,Color> map = new HashMap<>();
-        for(int i = 0; i < bitmap.getWidth(); i++)
-            for(int j = 0; j < bitmap.getHeight(); j++) {
-                int pixel = bitmap.getPixel(i,j);
-                if (map.containsKey(pixel))
-                    map.get(pixel).incrementCount();
-                else
-                    map.put(pixel,new Color(pixel));
+    static PixelRows createBitmapRows(@NonNull Bitmap bitmap, @NonNull Config config){
+        BitmapPixelRows rows = new BitmapPixelRows(bitmap);
+        if(config.region == null || !config.region_elliptical)
+            return rows;
+        return new RegionPixelRows(rows, 0, 0, bitmap.getWidth(), bitmap.getHeight(), true, 1);
+    }
+
+    public static Histogram instantiateHistogramFromYuv(byte[] data, int imageFormat, int width, int height){
+        return instantiateHistogramFromYuv(data, imageFormat, width, height, null);
+    }
+
+    /**
+     * Factory function returns histogram calculated directly out of raw camera frame,
+     * colors are read from YUV planes without JPEG encoding and decoding
+     * @param data frame bytes
+     * @param imageFormat ImageFormat.NV21 or ImageFormat.YV12
+     * @param width
+     * @param height
+     * @param config scale by (or boundary) is used as pixels subsampling step
+     * @return Histogram
+     * @throws IllegalArgumentException
+     */
+    public static Histogram instantiateHistogramFromYuv(byte[] data, int imageFormat, int width, int height, Config config) throws IllegalArgumentException{
+        if(config == null)
+            config = new Config();
+        return histogramOf(createYuvRows(data, imageFormat, width, height, config), config);
+    }
+
+    /**
+     * Creates rows source of raw camera frame (NV21 or YV12)
+     * @param data
+     * @param imageFormat
+     * @param width
+     * @param height
+     * @param config
+     * @return
+     * @throws IllegalArgumentException
+     */
+    static PixelRows createYuvRows(byte[] data, int imageFormat, int width, int height, @NonNull Config config) throws IllegalArgumentException{
+        int step = stepOf(width, height, config);
+        return regionRowsOf(createYuvFrame(data, imageFormat, width, height, step), step, config);
+    }
+
+    /**
+     * Creates full frame rows of raw camera frame (NV21 or YV12)
+     * @param data
+     * @param imageFormat
+     * @param width
+     * @param height
+     * @param step
+     * @return
+     * @throws IllegalArgumentException
+     */
+    static YuvPixelRows createYuvFrame(byte[] data, int imageFormat, int width, int height, int step) throws IllegalArgumentException{
+        switch (imageFormat) {
+            case ImageFormat.NV21:
+                return YuvPixelRows.nv21(data, width, height, step);
+            case ImageFormat.YV12:
+                return YuvPixelRows.yv12(data, width, height, step);
+            default:
+                throw new IllegalArgumentException("Unsupported image format " + imageFormat);
+        }
+    }
+
+    /**
+     * Factory function returns histogram of YUV_420_888 camera2 image.
+     * Planes are read in place, the image is not closed by this function
+     * @param image
+     * @param config scale by (or boundary) is used as pixels subsampling step
+     * @return Histogram
+     * @throws IllegalArgumentException
+     */
+    public static Histogram instantiateHistogram(@NonNull Image image, Config config) throws IllegalArgumentException{
+        if(config == null)
+            config = new Config();
+        return histogramOf(createImageRows(image, config), config);
+    }
+
+    /**
+     * Creates rows source of YUV_420_888 camera2 image
+     * @param image
+     * @param config
+     * @return
+     * @throws IllegalArgumentException
+     */
+    static PixelRows createImageRows(@NonNull Image image, @NonNull Config config) throws IllegalArgumentException{
+        int step = stepOf(image.getWidth(), image.getHeight(), config);
+        return regionRowsOf(createImageFrame(image, step), step, config);
+    }
+
+    /**
+     * Creates full frame rows of YUV_420_888 camera2 image
+     * @param image
+     * @param step
+     * @return
+     * @throws IllegalArgumentException
+     */
+    static YuvPlanesPixelRows createImageFrame(@NonNull Image image, int step) throws IllegalArgumentException{
+        if(image.getFormat() != ImageFormat.YUV_420_888)
+            throw new IllegalArgumentException("Unsupported image format " + image.getFormat());
+        Image.Plane[] planes = image.getPlanes();
+        //U and V planes are guaranteed to have the same row and pixel strides
+        return new YuvPlanesPixelRows(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight(), step);
+    }
+
+    /**
+     * Factory function returns histogram of 4:2:0 YUV planes, strides are honored so
+     * planar, semi planar and padded layouts are read without copying
+     * @param yPlane
+     * @param yRowStride
+     * @param yPixelStride
+     * @param uPlane
+     * @param vPlane
+     * @param uvRowStride
+     * @param uvPixelStride
+     * @param width
+     * @param height
+     * @param config scale by (or boundary) is used as pixels subsampling step
+     * @return Histogram
+     */
+    public static Histogram instantiateHistogramFromYuvPlanes(@NonNull ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                                             @NonNull ByteBuffer uPlane, @NonNull ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                                                             int width, int height, Config config){
+        if(config == null)
+            config = new Config();
+        int step = stepOf(width, height, config);
+        return histogramOf(regionRowsOf(new YuvPlanesPixelRows(yPlane, yRowStride, yPixelStride, uPlane, vPlane, uvRowStride, uvPixelStride,
+                width, height, step), step, config), config);
+    }
+
+    // Helper function, full frame rows are restricted to the region of interest if it is set
+    private static <T extends PixelRows & PixelSpans> PixelRows regionRowsOf(@NonNull T frame, int step, @NonNull Config config){
+        if(config.region == null)
+            return frame;
+        int[] bounds = config.region.boundsOf(frame.getWidth(), frame.getHeight());
+        return new RegionPixelRows(frame, bounds[0], bounds[1], bounds[2], bounds[3], config.region_elliptical, step);
+    }
+
+    // Helper function, pixels subsampling step of raw frames
+    static int stepOf(int width, int height, @NonNull Config config){
+        return config.isPredefinedScaleBy() ? config.scale_by : calcSampleSize(width, height, config);
+    }
+
+    // Helper function, decoded rectangle of the image: its region of interest in pixels or the whole image
+    private static Rect decodedRegionOf(@NonNull BitmapRegionDecoder decoder, @NonNull Config config){
+        if(config.region == null)
+            return new Rect(0, 0, decoder.getWidth(), decoder.getHeight());
+        int[] bounds = config.region.boundsOf(decoder.getWidth(), decoder.getHeight());
+        return new Rect(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    // Helper function that counts rows source into a new histogram
+    private static Histogram histogramOf(@NonNull PixelRows rows, @NonNull Config config){
+        ColorCounter counter = obtainCounter(config);
+        if(config.sampling_step != null && rows instanceof PixelLattice) {
+            SampledCounting.Result result = SampledCounting.count((PixelLattice) rows, config.sampling_step, config.sampling_top_colors,
+                    config.sampling_confidence, SAMPLING_PRECISION, config.parallelism, config.quantization, counter);
+            return new Histogram(reduceCounter(counter, config), result.sampledCount, result.populationCount, config.sampling_confidence);
+        }
+        countPixelRows(rows, config, counter);
+        return new Histogram(reduceCounter(counter, config), rows.getPixelsCount());
+    }
+
+    // Helper function, decodes the image (or its region of interest) strip by strip into a single strip bitmap
+    // and counts every strip as soon as it is decoded, the decoder is recycled
+    private static Histogram histogramOfStrips(@NonNull BitmapRegionDecoder decoder, @NonNull Config config) throws IOException{
+        Bitmap strip = null;
+        try {
+            Rect region = decodedRegionOf(decoder, config);
+            BitmapFactory.Options options = prepareOptionsForSampling(config);
+            options.inJustDecodeBounds = false;
+            if(config.max_boundary != null)
+                options.inSampleSize = calcSampleSize(region.width(), region.height(), config);
+            int sampleSize = options.inSampleSize;
+            //Strips are whole multiples of the sample size, so strips rows add up to the rows of the image decoded at once
+            int stripSourceRows = config.strip_rows * sampleSize;
+            int width = Math.max(1, region.width() / sampleSize);
+            int height = 0;
+            for(int top = region.top; top < region.bottom; top += stripSourceRows)
+                height += stripRowsOf(Math.min(stripSourceRows, region.bottom - top), sampleSize);
+
+            //Region is drawn into inBitmap which keeps its size, rows of a shorter last strip are counted only
+            strip = config.reuse_bitmap ? obtainDecodeBitmap(width, config.strip_rows, options.inPreferredConfig, true)
+                    : Bitmap.createBitmap(width, config.strip_rows, options.inPreferredConfig);
+            options.inMutable = true;
+            BitmapStripRows image = new BitmapStripRows(width, height);
+            PixelRows rows = config.region != null && config.region_elliptical
+                    ? new RegionPixelRows(image, 0, 0, width, height, true, 1) : image;
+            ColorCounter counter = obtainCounter(config);
+            Rect stripRect = new Rect();
+            int row = 0;
+            for(int top = region.top; top < region.bottom; top += stripSourceRows) {
+                int bottom = Math.min(top + stripSourceRows, region.bottom);
+                stripRect.set(region.left, top, region.right, bottom);
+                options.inBitmap = strip;
+                Bitmap decoded = decoder.decodeRegion(stripRect, options);
+                if(decoded == null)
+                    throw new IOException("Unable to decode strip " + top + " - " + bottom);
+                strip = decoded;
+                image.setStrip(strip, row);
+                int stripRows = stripRowsOf(bottom - top, sampleSize);
+                rows.countRows(row, row + stripRows, counter);
+                row += stripRows;
             }
-       return map.values().toArray(new Color[map.size()]);
+            return new Histogram(reduceCounter(counter, config), rows.getPixelsCount());
+        }finally {
+            decoder.recycle();
+            if(strip != null && !config.reuse_bitmap)
+                strip.recycle();
+        }
+    }
+
+    // Helper function, decoded rows of a strip of source rows
+    private static int stripRowsOf(int sourceRows, int sampleSize){
+        return Math.max(1, sourceRows / sampleSize);
+    }
+
+    // Helper function, empty counting backend of the config
+    private static ColorCounter obtainCounter(@NonNull Config config){
+        if(config.octree_colors != null)
+            return ColorCounting.obtainOctreeCounter(config.octree_colors);
+        if(config.color_space != null)
+            return ColorCounting.obtainColorSpaceCounter(config.color_space);
+        return ColorCounting.obtainCounter(config.quantization);
+    }
+
+    // Helper function, counted colors are reduced to the palette if requested, reusable counters are compacted
+    private static ColorCounter reduceCounter(@NonNull ColorCounter counter, @NonNull Config config){
+        if(config.palette_colors == null)
+            return ColorCounting.compact(counter);
+        return tableOf(PaletteExtraction.extract(counter, config.palette_colors,
+                config.palette_iterations, config.palette_time_millis * 1000000L));
+    }
+
+    /**
+     * Creates counting table out of packed entries (see TopColorsHeap)
+     * @param entries
+     * @return
+     */
+    static ColorCountTable tableOf(@NonNull long[] entries){
+        ColorCountTable table = new ColorCountTable(entries.length);
+        for(long entry : entries)
+            table.add(TopColorsHeap.colorOf(entry), TopColorsHeap.countOf(entry));
+        return table;
+    }
+
+    /**
+     * Counts all the rows of pixel source, sequentially or in parallel according to config
+     * @param rows
+     * @param config
+     * @param counter
+     */
+    static void countPixelRows(@NonNull PixelRows rows, @NonNull Config config, @NonNull ColorCounter counter){
+        ColorCounting.count(rows, config.parallelism, config.quantization, counter);
+    }
+
+    // Helper function, reusable counters are compacted so the histogram does not hold them
+    static Histogram createHistogram(@NonNull ColorCounter counter, int itemsCount){
+        return new Histogram(ColorCounting.compact(counter), itemsCount);
+    }
+
+    /**
+     * Creates histogram of packed entries (see TopColorsHeap) sorted from the most popular one,
+     * the entries are its top colors, so reading them later selects nothing
+     * @param entries
+     * @param itemsCount
+     * @return
+     */
+    static Histogram createHistogram(@NonNull long[] entries, int itemsCount){
+        Histogram histogram = new Histogram(tableOf(entries), itemsCount);
+        histogram.mTopEntries = entries;
+        return histogram;
     }
 
     /**
@@ -206,29 +824,46 @@ public class Histogram {
      * @return
      * @throws IllegalStateException
      */
-    private static Bitmap prepareHistogramBitmap(byte[] bytes, int offset, int length, Config config) throws IllegalStateException{
+    @SuppressWarnings("deprecation")
+    static Bitmap prepareHistogramBitmap(byte[] bytes, int offset, int length, Config config) throws IllegalStateException{
+        if(config.region != null) {
+            try {
+                return decodeRegion(BitmapRegionDecoder.newInstance(bytes, offset, length, false), config);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to decode region of array", e);
+            }
+        }
         BitmapFactory.Options options = prepareOptionsForSampling(config);
-        if(!config.isPredefinedScaleBy()) {
+        if(options.inJustDecodeBounds) {
             BitmapFactory.decodeByteArray(bytes, offset, length, options);
             updateOptionsForDecoding(options, config);
         }
         Bitmap bitmap = BitmapFactory.decodeByteArray(bytes,offset,length,options);
         if(bitmap == null)
             throw new IllegalStateException("Unable to decode bitmap from array");
+        if(config.reuse_bitmap)
+            sDecodeBitmap.set(bitmap);
         return bitmap;
 
     }
 
     /**
-     * Generates scaled bitmap out of input stream
+     * Generates scaled bitmap out of input stream, the stream need not support mark and reset
      * @param is
      * @param config
      * @return
      * @throws IOException
      */
+    @SuppressWarnings("deprecation")
     private static Bitmap prepareHistogramBitmap(InputStream is, Config config) throws IOException {
+        if(config.region != null)
+            return decodeRegion(BitmapRegionDecoder.newInstance(is, false), config);
         BitmapFactory.Options options = prepareOptionsForSampling(config);
-        if(!config.isPredefinedScaleBy()) {
+        if(options.inJustDecodeBounds) {
+            //Bounds pass reads the stream head, the stream is rewound to its current position for decoding
+            if(!is.markSupported())
+                is = new BufferedInputStream(is);
+            is.mark(Integer.MAX_VALUE);
             BitmapFactory.decodeStream(is, null, options);
             is.reset();
             updateOptionsForDecoding(options, config);
@@ -236,27 +871,93 @@ public class Histogram {
         Bitmap bitmap =  BitmapFactory.decodeStream(is,null,options);
         if(bitmap == null)
             throw new IOException("Unable to decode bitmap");
+        if(config.reuse_bitmap)
+            sDecodeBitmap.set(bitmap);
+        return bitmap;
+    }
+
+    // Helper function, decodes the region of interest only (the rest of the image is not decoded), the decoder is recycled
+    private static Bitmap decodeRegion(@NonNull BitmapRegionDecoder decoder, @NonNull Config config) throws IllegalStateException{
+        try {
+            Rect region = decodedRegionOf(decoder, config);
+            BitmapFactory.Options options = prepareOptionsForSampling(config);
+            options.inJustDecodeBounds = false;
+            if(config.max_boundary != null)
+                options.inSampleSize = calcSampleSize(region.width(), region.height(), config);
+            if(config.reuse_bitmap) {
+                //Region is drawn into inBitmap which keeps its size, so the pooled bitmap has to be of the decoded region size
+                int sampleSize = options.inSampleSize;
+                options.inMutable = true;
+                options.inBitmap = obtainDecodeBitmap(Math.max(1, region.width() / sampleSize),
+                        Math.max(1, region.height() / sampleSize), options.inPreferredConfig, true);
+            }
+            Bitmap bitmap = decoder.decodeRegion(region, options);
+            if(bitmap == null)
+                throw new IllegalStateException("Unable to decode region of bitmap");
+            if(config.reuse_bitmap)
+                sDecodeBitmap.set(bitmap);
+            return bitmap;
+        }finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Releases bitmap returned by prepareHistogramBitmap, pooled bitmap is kept for the next frame
+     * @param bitmap
+     * @param config
+     */
+    static void releaseHistogramBitmap(@NonNull Bitmap bitmap, @NonNull Config config){
+        if(!config.reuse_bitmap)
+            bitmap.recycle();
+    }
+
+    // Helper function, returns the current thread pooled bitmap that fits the decoded frame (or is exactly of its size)
+    private static Bitmap obtainDecodeBitmap(int width, int height, Bitmap.Config bitmapConfig, boolean exact){
+        int bytes = width * height * (bitmapConfig == Bitmap.Config.RGB_565 ? 2 : 4);
+        Bitmap bitmap = sDecodeBitmap.get();
+        //Much larger bitmap is replaced as well, so the pool follows the analysis resolution down
+        if(bitmap == null || bitmap.isRecycled() || bitmap.getAllocationByteCount() < bytes
+                || bitmap.getAllocationByteCount() > bytes * DECODE_BITMAP_SHRINK
+                || (exact && (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != bitmapConfig))) {
+            if(bitmap != null)
+                bitmap.recycle();
+            bitmap = Bitmap.createBitmap(width, height, bitmapConfig);
+            sDecodeBitmap.set(bitmap);
+        }
         return bitmap;
     }
     // Helper function to resolve scaling factor upon boundary size
     private static BitmapFactory.Options prepareOptionsForSampling(Config config){
         BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config.decode_rgb565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
         if(config.max_boundary != null) {
             options.inJustDecodeBounds = true;
             options.inSampleSize = 1;
-        }else
+        }else {
             options.inSampleSize = config.scale_by;
+            //Pooled bitmap is picked by the decoded frame bounds
+            options.inJustDecodeBounds = config.reuse_bitmap;
+        }
         return options;
     }
     // Helper function to prepare Bitmap.Options for bitmap generation
     private static void updateOptionsForDecoding(BitmapFactory.Options options, Config config){
         options.inJustDecodeBounds = false;
-        options.inSampleSize = calcSampleSize(options,config);
+        if(config.max_boundary != null)
+            options.inSampleSize = calcSampleSize(options.outWidth, options.outHeight, config);
+        if(config.reuse_bitmap) {
+            //Bounds are of the encoded image, sampled size is rounded up so the decoded frame surely fits
+            int sampleSize = options.inSampleSize;
+            options.inMutable = true;
+            options.inBitmap = obtainDecodeBitmap((options.outWidth + sampleSize - 1) / sampleSize,
+                    (options.outHeight + sampleSize - 1) / sampleSize, options.inPreferredConfig, false);
+        }
     }
     // Helper function to calculate sample size
-    private static int calcSampleSize(BitmapFactory.Options options, Config config){
+    private static int calcSampleSize(int width, int height, Config config){
         int sampleSize = 1;
-        while (options.outHeight / sampleSize > config.max_boundary || options.outWidth / sampleSize > config.max_boundary)
+        while (height / sampleSize > config.max_boundary || width / sampleSize > config.max_boundary)
             sampleSize *= 2;
 
         return sampleSize;
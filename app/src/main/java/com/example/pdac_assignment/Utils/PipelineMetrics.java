@@ -0,0 +1,235 @@
+package com.example.pdac_assignment.Utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per stage latency of the frames pipeline collected into rolling windows, with frames counters.
+ * Stages are timed by the caller with System.nanoTime (monotonic), recording is a few stores
+ * under an uncontended lock, percentiles are computed only when they are requested.
+ * Stages are recorded by the worker thread (queue, count, sort) and the main thread (delivery, render, total),
+ * delivery is matched to the last posted frame since LiveData delivers only the last posted value
+ */
+public class PipelineMetrics {
+    //Pipeline stages in frame order
+    public enum Stage{
+        //Frame enqueued by the camera callback until it is taken by the worker
+        QUEUE("queue"),
+        //Frame counting, decoding of encoded frames included
+        COUNT("count"),
+        //Top colors selection
+        SORT("sort"),
+        //Posted histogram until it is delivered on the main thread
+        DELIVERY("deliver"),
+        //Delivered histogram until it is applied to the color boxes on the next vsync
+        RENDER("render"),
+        //Frame capture until the colors are rendered
+        TOTAL("total");
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    public static final int DEFAULT_WINDOW = 128;
+    //Formatted text fits any counters and durations
+    public static final int FORMAT_CAPACITY = 512;
+    //Stage label and percentile columns widths
+    private static final int LABEL_WIDTH = 8;
+    private static final int VALUE_WIDTH = 6;
+
+    //Rolling window of every stage
+    private final Window[] mWindows = new Window[Stage.values().length];
+    private final AtomicLong mFramesProcessed = new AtomicLong();
+    private final AtomicLong mFramesDropped = new AtomicLong();
+
+    //Capture and post time of the last posted frame, 0 when it is delivered
+    private long mPostedCaptureNanos = 0;
+    private long mPostedNanos = 0;
+    //Capture and delivery time of the frame being rendered
+    private long mRenderCaptureNanos = 0;
+    private long mDeliveredNanos = 0;
+    //Formatting buffer, reused by format calls
+    private final StringBuilder mText = new StringBuilder(FORMAT_CAPACITY);
+
+    public PipelineMetrics(){
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window amount of last samples percentiles are computed of
+     */
+    public PipelineMetrics(int window){
+        if(window < 1)
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        for(int i = 0; i < mWindows.length; i++)
+            mWindows[i] = new Window(window);
+    }
+
+    /**
+     * Records stage duration
+     * @param stage
+     * @param nanos
+     */
+    public void record(@NonNull Stage stage, long nanos){
+        mWindows[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * Returns percentile of the stage recorded durations (nearest rank)
+     * @param stage
+     * @param percentile 0..100
+     * @return duration in nanoseconds, 0 if nothing is recorded
+     */
+    public long getPercentileNanos(@NonNull Stage stage, double percentile){
+        if(percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        return mWindows[stage.ordinal()].percentile(percentile);
+    }
+
+    public void onFrameProcessed(){
+        mFramesProcessed.incrementAndGet();
+    }
+
+    /**
+     * Frame replaced in the queue by a newer one before it is processed
+     */
+    public void onFrameDropped(){
+        mFramesDropped.incrementAndGet();
+    }
+
+    public long getFramesProcessed(){
+        return mFramesProcessed.get();
+    }
+
+    public long getFramesDropped(){
+        return mFramesDropped.get();
+    }
+
+    /**
+     * Marks the frame result posted to the main thread
+     * @param captureNanos capture time of the frame
+     */
+    public synchronized void markPosted(long captureNanos){
+        mPostedCaptureNanos = captureNanos;
+        mPostedNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the last posted frame result delivered on the main thread, records delivery stage.
+     * Redelivered (already rendered) results are ignored
+     */
+    public synchronized void markDelivered(){
+        if(mPostedNanos == 0)
+            return;
+        mDeliveredNanos = System.nanoTime();
+        mRenderCaptureNanos = mPostedCaptureNanos;
+        record(Stage.DELIVERY, mDeliveredNanos - mPostedNanos);
+        mPostedNanos = 0;
+    }
+
+    /**
+     * Marks the delivered frame rendered, records render and total stages
+     */
+    public synchronized void markRendered(){
+        if(mDeliveredNanos == 0)
+            return;
+        long now = System.nanoTime();
+        record(Stage.RENDER, now - mDeliveredNanos);
+        record(Stage.TOTAL, now - mRenderCaptureNanos);
+        mDeliveredNanos = 0;
+    }
+
+    /**
+     * Formats stages percentiles (milliseconds) and frames counters, a line per stage
+     * @return
+     */
+    public String format(){
+        char[] chars = new char[FORMAT_CAPACITY];
+        return new String(chars, 0, format(chars));
+    }
+
+    /**
+     * Formats the same text as format into the chars through a reused buffer, so a refreshed overlay allocates no strings
+     * @param chars output, the text is truncated to its length (see FORMAT_CAPACITY)
+     * @return formatted length
+     */
+    public synchronized int format(@NonNull char[] chars){
+        StringBuilder builder = mText;
+        builder.setLength(0);
+        builder.append("frames ").append(getFramesProcessed()).append(" dropped ").append(getFramesDropped()).append('\n');
+        appendColumn(builder, "ms", -LABEL_WIDTH);
+        appendColumn(builder, "p50", VALUE_WIDTH);
+        appendColumn(builder, "p95", VALUE_WIDTH);
+        appendColumn(builder, "p99", VALUE_WIDTH);
+        for(Stage stage : Stage.values()) {
+            builder.append('\n');
+            appendColumn(builder, stage.label, -LABEL_WIDTH);
+            appendMillis(builder, getPercentileNanos(stage, 50));
+            appendMillis(builder, getPercentileNanos(stage, 95));
+            appendMillis(builder, getPercentileNanos(stage, 99));
+        }
+        int length = Math.min(builder.length(), chars.length);
+        builder.getChars(0, length, chars, 0);
+        return length;
+    }
+
+    // Helper function, appends space separated column, left aligned if width is negative
+    private static void appendColumn(StringBuilder builder, String text, int width){
+        if(builder.length() > 0 && builder.charAt(builder.length() - 1) != '\n')
+            builder.append(' ');
+        if(width < 0)
+            builder.append(text);
+        for(int i = text.length(); i < Math.abs(width); i++)
+            builder.append(' ');
+        if(width > 0)
+            builder.append(text);
+    }
+
+    // Helper function, appends right aligned milliseconds with a single decimal
+    private static void appendMillis(StringBuilder builder, long nanos){
+        long tenths = (nanos + 50000) / 100000;
+        int digits = 1;
+        for(long value = tenths / 10; value >= 10; value /= 10)
+            digits++;
+        builder.append(' ');
+        //Integer digits, decimal point and the decimal
+        for(int i = digits + 2; i < VALUE_WIDTH; i++)
+            builder.append(' ');
+        builder.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    // Ring buffer of the last samples of a stage
+    private static class Window{
+        private final long[] mSamples;
+        //Sorting buffer, reused by percentile requests
+        private final long[] mSorted;
+        private int mNext = 0;
+        private int mSize = 0;
+
+        Window(int capacity) {
+            mSamples = new long[capacity];
+            mSorted = new long[capacity];
+        }
+
+        synchronized void add(long sample){
+            mSamples[mNext] = sample;
+            mNext = (mNext + 1) % mSamples.length;
+            if(mSize < mSamples.length)
+                mSize++;
+        }
+
+        synchronized long percentile(double percentile){
+            if(mSize == 0)
+                return 0;
+            System.arraycopy(mSamples, 0, mSorted, 0, mSize);
+            Arrays.sort(mSorted, 0, mSize);
+            int rank = (int) Math.ceil(percentile / 100 * mSize);
+            return mSorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.pdac_assignment.Utils;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import androidx.annotation.NonNull;
+
+import com.example.pdac_assignment.core.ColorCounter;
+import com.example.pdac_assignment.core.ColorCounting;
+import com.example.pdac_assignment.core.PixelRows;
+import com.example.pdac_assignment.core.Quantization;
+
+/**
+ * Long living histogram that folds camera frames into exponentially decayed running counts.
+ * Each new frame multiplies the counts of previous frames by decay factor, so the palette is stable
+ * for a static scene and follows the scene within a few frames when it changes.
+ * Decay is applied lazily: instead of scaling all the entries every frame, the weight of new pixels
+ * grows by 1/decay. Entries are renormalized (and faded ones are dropped) only when the weight gets large.
+ * The class is not thread safe, frames are expected to be accumulated on a single worker thread
+ */
+public class TemporalHistogram {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.5F;
+    //Pixel weight limit that triggers renormalization
+    private static final double RENORMALIZE_WEIGHT = 1e6;
+    //Entries decayed below this amount of pixels are dropped on renormalization
+    private static final double FADED_COUNT = 0.5;
+
+    private final double mDecay;
+    //Colors are reduced to bins colors if set
+    private final Quantization mQuantization;
+    //Counting backend the frames pixels are fed into
+    private final ColorCounter mCounter = new DecayingCounter();
+
+    //Keys (colors) array
+    private int[] mKeys;
+    //Scaled weights array, zero weight marks an empty slot
+    private double[] mWeights;
+    private int mMask;
+    private int mResizeThreshold;
+    private int mSize = 0;
+    //Weight of a single pixel of the current frame, decayed count of an entry is its weight divided by it
+    private double mPixelWeight = 1;
+    //Sum of all entries weights
+    private double mTotalWeight = 0;
+    private int mFramesCount = 0;
+
+    /**
+     * @param decay share of the accumulated counts kept with each new frame, between 0 and 1
+     */
+    public TemporalHistogram(float decay){
+        this(decay, null);
+    }
+
+    /**
+     * @param decay share of the accumulated counts kept with each new frame, between 0 and 1
+     * @param quantization null for exact colors
+     */
+    public TemporalHistogram(float decay, Quantization quantization){
+        if(decay <= 0 || decay >= 1)
+            throw new IllegalArgumentException("Decay must be between 0 and 1: " + decay);
+        mDecay = decay;
+        mQuantization = quantization;
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Folds raw camera frame (NV21 or YV12) into the running counts
+     * @param data
+     * @param imageFormat
+     * @param width
+     * @param height
+     * @param config scale by (or boundary) is used as pixels subsampling step
+     * @throws IllegalArgumentException
+     */
+    public void accumulateYuv(byte[] data, int imageFormat, int width, int height, Histogram.Config config) throws IllegalArgumentException{
+        if(config == null)
+            config = new Histogram.Config();
+        accumulate(Histogram.createYuvRows(data, imageFormat, width, height, config), config);
+    }
+
+    /**
+     * Folds YUV_420_888 camera2 image into the running counts, the image is not closed by this function
+     * @param image
+     * @param config scale by (or boundary) is used as pixels subsampling step
+     * @throws IllegalArgumentException
+     */
+    public void accumulate(@NonNull Image image, Histogram.Config config) throws IllegalArgumentException{
+        if(config == null)
+            config = new Histogram.Config();
+        accumulate(Histogram.createImageRows(image, config), config);
+    }
+
+    /**
+     * Folds encoded image (JPEG, PNG...) into the running counts
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param config
+     * @throws IllegalArgumentException
+     */
+    public void accumulate(byte[] bytes, int offset, int length, Histogram.Config config) throws IllegalArgumentException{
+        if(config == null)
+            config = new Histogram.Config();
+        Bitmap bitmap = null;
+        try {
+            bitmap = Histogram.prepareHistogramBitmap(bytes, offset, length, config);
+        }catch (Exception e){
+            throw new IllegalArgumentException("Unable to decode bytes", e);
+        }
+        accumulate(Histogram.createBitmapRows(bitmap, config), config);
+        Histogram.releaseHistogramBitmap(bitmap, config);
+    }
+
+    /**
+     * Folds histogram of a frame counted elsewhere (e.g. by another pipeline stage) into the running counts
+     * @param frame
+     */
+    public void accumulate(@NonNull Histogram frame){
+        startFrame();
+        mCounter.addAll(frame.getCounter());
+    }
+
+    private void accumulate(@NonNull PixelRows rows, @NonNull Histogram.Config config){
+        startFrame();
+        Histogram.countPixelRows(rows, config, mCounter);
+    }
+
+    // Helper function, previous frames are decayed by growing the weight of the new frame pixels
+    private void startFrame(){
+        if(mFramesCount++ > 0)
+            mPixelWeight /= mDecay;
+        if(mPixelWeight > RENORMALIZE_WEIGHT)
+            renormalize(mKeys.length);
+    }
+
+    /**
+     * Returns a histogram of k most popular colors of the running counts,
+     * colors counts and total count are decayed pixels amounts.
+     * Top colors are selected on the calling thread, so reading them on the main thread allocates nothing
+     * @param k
+     * @return
+     */
+    public Histogram snapshot(int k){
+        return Histogram.createHistogram(ColorCounting.topColors(mCounter, k), (int) Math.round(mTotalWeight / mPixelWeight));
+    }
+
+    /**
+     * @return decayed amount of accumulated pixels
+     */
+    public double getTotalCount(){
+        return mTotalWeight / mPixelWeight;
+    }
+
+    public int getFramesCount(){
+        return mFramesCount;
+    }
+
+    /**
+     * Drops all the accumulated counts
+     */
+    public void reset(){
+        allocate(DEFAULT_CAPACITY);
+        mSize = 0;
+        mPixelWeight = 1;
+        mTotalWeight = 0;
+        mFramesCount = 0;
+    }
+
+    private void addWeight(int color, double weight){
+        if(mQuantization != null)
+            color = mQuantization.quantize(color);
+        mTotalWeight += weight;
+        int slot = hash(color) & mMask;
+        while (mWeights[slot] != 0) {
+            if (mKeys[slot] == color) {
+                mWeights[slot] += weight;
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = color;
+        mWeights[slot] = weight;
+        if(++mSize > mResizeThreshold)
+            //Faded entries are dropped first, the table is grown only if it is still too loaded
+            renormalize(mKeys.length * 2);
+    }
+
+    /**
+     * Brings weights back to decayed counts scale, drops faded entries and rehashes the rest
+     * @param maxCapacity
+     */
+    private void renormalize(int maxCapacity){
+        int[] keys = mKeys;
+        double[] weights = mWeights;
+        double scale = 1 / mPixelWeight;
+        int remaining = 0;
+        for (double weight : weights)
+            if (weight * scale >= FADED_COUNT)
+                remaining++;
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * LOAD_FACTOR < remaining && capacity < maxCapacity)
+            capacity <<= 1;
+        allocate(capacity);
+        mSize = 0;
+        mTotalWeight = 0;
+        mPixelWeight = 1;
+        for(int i = 0; i < weights.length; i++) {
+            double weight = weights[i] * scale;
+            if (weight < FADED_COUNT)
+                continue;
+            int slot = hash(keys[i]) & mMask;
+            while (mWeights[slot] != 0)
+                slot = (slot + 1) & mMask;
+            mKeys[slot] = keys[i];
+            mWeights[slot] = weight;
+            mTotalWeight += weight;
+            mSize++;
+        }
+    }
+
+    private void allocate(int capacity){
+        mKeys = new int[capacity];
+        mWeights = new double[capacity];
+        mMask = capacity - 1;
+        mResizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(int color){
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Counter view of the running counts, counted pixels are added with the current frame weight
+    private class DecayingCounter implements ColorCounter{
+        @Override
+        public void increment(int color) {
+            addWeight(color, mPixelWeight);
+        }
+
+        @Override
+        public void incrementAll(@NonNull int[] colors, int offset, int length) {
+            for(int i = offset, end = offset + length; i < end; i++)
+                addWeight(colors[i], mPixelWeight);
+        }
+
+        @Override
+        public void add(int color, int count) {
+            addWeight(color, count * mPixelWeight);
+        }
+
+        @Override
+        public void addAll(@NonNull ColorCounter other) {
+            other.forEach(new EntryVisitor() {
+                @Override
+                public void visit(int color, int count) {
+                    add(color, count);
+                }
+            });
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public void clear() {
+            reset();
+        }
+
+        /**
+         * Iterates over entries with decayed counts rounded to whole pixels, faded entries are skipped
+         * @param visitor
+         */
+        @Override
+        public void forEach(@NonNull EntryVisitor visitor) {
+            for(int i = 0; i < mWeights.length; i++) {
+                if(mWeights[i] == 0)
+                    continue;
+                int count = (int) Math.round(mWeights[i] / mPixelWeight);
+                if(count > 0)
+                    visitor.visit(mKeys[i], count);
+            }
+        }
+    }
+}
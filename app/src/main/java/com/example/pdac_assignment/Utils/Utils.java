@@ -3,6 +3,8 @@ package com.example.pdac_assignment.Utils;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
 
+import com.example.pdac_assignment.core.YuvConversion;
+
 import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 
@@ -26,4 +28,15 @@ public final class Utils {
 
         return baos.toByteArray();
     }
+
+    /**
+     * Helper function for a single Yuv pixel -> ARGB conversion (see YuvConversion)
+     * @param y luma 0..255
+     * @param u Cb 0..255
+     * @param v Cr 0..255
+     * @return opaque ARGB color
+     */
+    public static int yuvToArgb(int y, int u, int v) {
+        return YuvConversion.toArgb(y, u, v);
+    }
 }
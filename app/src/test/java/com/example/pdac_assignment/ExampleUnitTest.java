@@ -4,7 +4,24 @@ import org.junit.Test;
 
 import static org.junit.Assert.*;
 
+import com.example.pdac_assignment.Utils.AdaptiveScaleController;
+import com.example.pdac_assignment.Utils.FrameMailbox;
+import com.example.pdac_assignment.Utils.FramePipeline;
+import com.example.pdac_assignment.Utils.GridHistogram;
 import com.example.pdac_assignment.Utils.Histogram;
+import com.example.pdac_assignment.Utils.PipelineMetrics;
+import com.example.pdac_assignment.Utils.TemporalHistogram;
+import com.example.pdac_assignment.Utils.Utils;
+import com.example.pdac_assignment.core.ColorSpace;
+import com.example.pdac_assignment.core.Quantization;
+import com.example.pdac_assignment.core.RegionOfInterest;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Example local unit test, which will execute on the development machine (host).
@@ -24,4 +41,591 @@ public class ExampleUnitTest {
         assertEquals(new Histogram.Color(0xffffff).toString(), "R:255 B:255 C:255");
         assertEquals(new Histogram.Color(0x7f7f7f).toString(), "R:127 B:127 C:127");
     }
-}
\ No newline at end of file
+    /**
+     * Testing that color boxes texts formatted into char buffers match the String based formatting
+     */
+    @Test
+    public void testColorBoxesFormatting(){
+        char[] chars = new char[20];
+        for(int color : new int[]{0xff0000, 0xffff00, 0xffffff, 0x7f7f7f, 0x000a63}) {
+            int length = ColorBoxesView.formatLabel(color, chars);
+            assertEquals(new Histogram.Color(color).toString(), new String(chars, 0, length));
+        }
+        for(float share : new float[]{0F, 0.05F, 8.22F, 42.5F, 100F}) {
+            int length = ColorBoxesView.formatPercent(Math.round(share * 100), '.', chars);
+            assertEquals(String.format(Locale.US, "%.2f%%", share), new String(chars, 0, length));
+        }
+        assertEquals(0xffffffff, ColorBoxesView.contrastColorOf(0x202020));
+        assertEquals(0xff000000, ColorBoxesView.contrastColorOf(0x20ff20));
+    }
+
+    @Test
+    public void testYuvToArgb(){
+        assertEquals(0xff000000, Utils.yuvToArgb(0, 128, 128));
+        assertEquals(0xffffffff, Utils.yuvToArgb(255, 128, 128));
+        assertEquals(0xff808080, Utils.yuvToArgb(128, 128, 128));
+        //JFIF red 255,0,0 -> Y:76 Cb:85 Cr:255
+        assertEquals(0xfffe0000, Utils.yuvToArgb(76, 85, 255) & 0xfffefefe);
+    }
+
+    /**
+     * Testing NV21 histogram of a frame where the left half is gray and the right half is white
+     */
+    @Test
+    public void testYuvHistogram(){
+        int width = 8, height = 4;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++)
+                nv21[y * width + x] = (byte) (x < width / 2 ? 128 : 255);
+        Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+
+        Histogram histogram = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).build());
+        Histogram.Color[] colors = histogram.getSortedColors();
+        assertEquals(2, colors.length);
+        assertEquals(32, histogram.getTotalColorsCount());
+        assertEquals(50F, histogram.getColorShare(colors[0]), 0.001F);
+
+        Histogram subsampled = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(2).build());
+        assertEquals(8, subsampled.getTotalColorsCount());
+        assertEquals(2, subsampled.getSortedColors().length);
+    }
+
+    /**
+     * Testing that top colors selection matches the prefix of fully sorted colors
+     */
+    @Test
+    public void testTopColors(){
+        int width = 64, height = 64;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        //Luma levels with different popularity (level i covers i+1 rows)
+        for(int y = 0, level = 0, rows = 0; y < height; y++) {
+            if(rows++ > level) {
+                level++;
+                rows = 1;
+            }
+            Arrays.fill(nv21, y * width, (y + 1) * width, (byte) (level * 20));
+        }
+        Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+
+        Histogram histogram = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).build());
+        Histogram.Color[] top = histogram.getTopColors(5);
+        Histogram.Color[] top3 = histogram.getTopColors(3);
+        Histogram.Color[] sorted = histogram.getSortedColors();
+        assertEquals(5, top.length);
+        assertEquals(3, top3.length);
+        for(int i = 0; i < top.length; i++) {
+            assertEquals(sorted[i], top[i]);
+            assertEquals(sorted[i].getCount(), top[i].getCount());
+        }
+        for(int i = 1; i < sorted.length; i++)
+            assertTrue(sorted[i - 1].getCount() >= sorted[i].getCount());
+        assertEquals(sorted.length, histogram.getTopColors(sorted.length + 10).length);
+
+        //Index based accessor reads the same colors into caller arrays
+        int[] colors = new int[5], counts = new int[5];
+        assertEquals(3, histogram.getTopColors(3, colors, counts));
+        for(int i = 0; i < 3; i++) {
+            assertEquals(top[i].color, colors[i]);
+            assertEquals(top[i].getCount(), counts[i]);
+        }
+        assertEquals(histogram.getColorShare(top[0]), histogram.getColorShare(counts[0]), 0F);
+    }
+
+    /**
+     * Testing that parallel tile counting gives exactly the sequential result
+     */
+    @Test
+    public void testParallelHistogram(){
+        int width = 320, height = 240;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(11).nextBytes(nv21);
+        for(Quantization quantization : new Quantization[]{null, Quantization.RGB444}) {
+            Histogram sequential = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                    new Histogram.ConfigBuilder().setScaleBy(1).setQuantization(quantization).build());
+            Histogram parallel = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                    new Histogram.ConfigBuilder().setScaleBy(1).setQuantization(quantization).setParallelism(4).build());
+            assertEquals(sequential.getTotalColorsCount(), parallel.getTotalColorsCount());
+            Histogram.Color[] expected = sequential.getSortedColors();
+            Histogram.Color[] actual = parallel.getSortedColors();
+            assertEquals(expected.length, actual.length);
+            for(int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], actual[i]);
+                assertEquals(expected[i].getCount(), actual[i].getCount());
+            }
+        }
+    }
+
+    /**
+     * Testing that histograms counted by two pipeline workers at once on the shared parallel pool
+     * give the sequential result
+     */
+    @Test
+    public void testConcurrentParallelHistograms() throws InterruptedException {
+        final int width = 320, height = 240;
+        final byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(13).nextBytes(nv21);
+        final Histogram.Color[] expected = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).build()).getTopColors(20);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] workers = new Thread[2];
+        for(int w = 0; w < workers.length; w++) {
+            workers[w] = new Thread(() -> {
+                for(int i = 0; i < 50; i++) {
+                    Histogram histogram = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                            new Histogram.ConfigBuilder().setScaleBy(1).setParallelism(2).build());
+                    Histogram.Color[] actual = histogram.getTopColors(20);
+                    for(int c = 0; c < expected.length; c++)
+                        if(!expected[c].equals(actual[c]) || expected[c].getCount() != actual[c].getCount()) {
+                            failures.incrementAndGet();
+                            break;
+                        }
+                }
+            });
+            workers[w].start();
+        }
+        for(Thread worker : workers)
+            worker.join();
+        assertEquals(0, failures.get());
+    }
+
+    /**
+     * Testing that older frames counts decay and fade out once the scene changes
+     */
+    @Test
+    public void testTemporalHistogram(){
+        int width = 8, height = 4;
+        byte[] gray = new byte[width * height * 3 / 2];
+        byte[] white = new byte[width * height * 3 / 2];
+        Arrays.fill(gray, (byte) 128);
+        Arrays.fill(white, 0, width * height, (byte) 255);
+        Arrays.fill(white, width * height, white.length, (byte) 128);
+
+        TemporalHistogram temporal = new TemporalHistogram(0.5F);
+        temporal.accumulateYuv(gray, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).build());
+        temporal.accumulateYuv(white, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).build());
+        Histogram histogram = temporal.snapshot(5);
+        Histogram.Color[] colors = histogram.getTopColors(5);
+        assertEquals(2, colors.length);
+        assertEquals(0xffffffff, colors[0].color);
+        assertEquals(32, colors[0].getCount());
+        assertEquals(16, colors[1].getCount());
+        assertEquals(48, histogram.getTotalColorsCount());
+        int[] topColors = new int[5], topCounts = new int[5];
+        assertEquals(2, histogram.getTopColors(5, topColors, topCounts));
+        assertEquals(0xffffffff, topColors[0]);
+        assertEquals(16, topCounts[1]);
+
+        //Weight renormalization takes place every 20 frames, faded gray entry is dropped
+        for(int i = 0; i < 100; i++)
+            temporal.accumulateYuv(white, 17 /*ImageFormat.NV21*/, width, height,
+                    new Histogram.ConfigBuilder().setScaleBy(1).build());
+        histogram = temporal.snapshot(5);
+        colors = histogram.getTopColors(5);
+        assertEquals(1, colors.length);
+        assertEquals(64, colors[0].getCount());
+        assertEquals(64, temporal.getTotalCount(), 0.01);
+    }
+
+    /**
+     * Testing that scale factor backs off under load and refines once frames fit the budget
+     */
+    @Test
+    public void testAdaptiveScaleController(){
+        AdaptiveScaleController controller = new AdaptiveScaleController(50, 8, 1, 64);
+        assertEquals(8, controller.getScaleBy());
+        //Fast frames, refining after the scale is settled
+        assertEquals(8, controller.onFrameProcessed(2000000));
+        assertEquals(4, controller.onFrameProcessed(2000000));
+        assertEquals(4, controller.onFrameProcessed(8000000));
+        assertEquals(2, controller.onFrameProcessed(8000000));
+        //Finer frame would not fit the budget with headroom
+        assertEquals(2, controller.onFrameProcessed(32000000));
+        assertEquals(2, controller.onFrameProcessed(32000000));
+        //Overloaded frame, backing off immediately
+        assertEquals(4, controller.onFrameProcessed(200000000));
+        assertEquals(64, new AdaptiveScaleController(50, 1000, 1, 64).getScaleBy());
+    }
+
+    /**
+     * Testing that sampled shares are within estimated errors of exact ones and that sampling stops early
+     * only once the ranking is settled
+     */
+    @Test
+    public void testSampledHistogram(){
+        int width = 64, height = 64;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Arrays.fill(nv21, (byte) 128);
+        Random random = new Random(5);
+        for(int i = 0; i < width * height; i++) {
+            int value = random.nextInt(10);
+            nv21[i] = (byte) (value < 6 ? 0 : (value < 9 ? 128 : 255));
+        }
+        Histogram exact = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).build());
+        Histogram sampled = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setSampling(4).build());
+        assertFalse(sampled.isExact());
+        assertTrue(sampled.getTotalColorsCount() < width * height);
+        Histogram.Color[] expected = exact.getTopColors(3);
+        Histogram.Color[] actual = sampled.getTopColors(3);
+        assertEquals(3, actual.length);
+        for(int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i]);
+            float error = sampled.getColorShareError(actual[i]);
+            assertTrue(error > 0);
+            assertEquals(exact.getColorShare(expected[i]), sampled.getColorShare(actual[i]), 2 * error);
+        }
+
+        //Colors of equal shares are never settled, so all the pixels are counted
+        Arrays.fill(nv21, 0, width * height, (byte) 0);
+        Arrays.fill(nv21, 0, width * height / 2, (byte) 255);
+        Histogram tie = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setSampling(4).build());
+        assertTrue(tie.isExact());
+        assertEquals(width * height, tie.getTotalColorsCount());
+        assertEquals(0F, tie.getColorShareError(tie.getTopColors(1)[0]), 0F);
+    }
+
+    /**
+     * Testing rolling percentiles and that redelivered results are not counted twice
+     */
+    @Test
+    public void testPipelineMetrics(){
+        PipelineMetrics metrics = new PipelineMetrics(100);
+        assertEquals(0, metrics.getPercentileNanos(PipelineMetrics.Stage.COUNT, 50));
+        for(int i = 1; i <= 100; i++)
+            metrics.record(PipelineMetrics.Stage.COUNT, i);
+        assertEquals(50, metrics.getPercentileNanos(PipelineMetrics.Stage.COUNT, 50));
+        assertEquals(95, metrics.getPercentileNanos(PipelineMetrics.Stage.COUNT, 95));
+        assertEquals(100, metrics.getPercentileNanos(PipelineMetrics.Stage.COUNT, 100));
+        //Window rolls over, the oldest samples are replaced
+        for(int i = 0; i < 50; i++)
+            metrics.record(PipelineMetrics.Stage.COUNT, 1000);
+        assertEquals(100, metrics.getPercentileNanos(PipelineMetrics.Stage.COUNT, 50));
+        assertEquals(1000, metrics.getPercentileNanos(PipelineMetrics.Stage.COUNT, 51));
+
+        metrics.markPosted(System.nanoTime());
+        metrics.markDelivered();
+        metrics.markRendered();
+        metrics.markDelivered();
+        metrics.markRendered();
+        long total = metrics.getPercentileNanos(PipelineMetrics.Stage.TOTAL, 100);
+        assertTrue(total > 0);
+        assertEquals(total, metrics.getPercentileNanos(PipelineMetrics.Stage.TOTAL, 0));
+
+        metrics.onFrameProcessed();
+        metrics.onFrameDropped();
+        metrics.onFrameDropped();
+        assertEquals(1, metrics.getFramesProcessed());
+        assertEquals(2, metrics.getFramesDropped());
+        assertTrue(metrics.format().startsWith("frames 1 dropped 2"));
+
+        //Reused buffer formatting lays the columns out as String.format would
+        metrics.record(PipelineMetrics.Stage.COUNT, 12345678);
+        metrics.record(PipelineMetrics.Stage.SORT, 1234567890123L);
+        StringBuilder expected = new StringBuilder(String.format(Locale.US, "frames %d dropped %d\n%-8s %6s %6s %6s",
+                1, 2, "ms", "p50", "p95", "p99"));
+        String[] labels = {"queue", "count", "sort", "deliver", "render", "total"};
+        for(PipelineMetrics.Stage stage : PipelineMetrics.Stage.values())
+            expected.append(String.format(Locale.US, "\n%-8s %6.1f %6.1f %6.1f", labels[stage.ordinal()],
+                    metrics.getPercentileNanos(stage, 50) / 1e6, metrics.getPercentileNanos(stage, 95) / 1e6, metrics.getPercentileNanos(stage, 99) / 1e6));
+        char[] chars = new char[PipelineMetrics.FORMAT_CAPACITY];
+        assertEquals(expected.toString(), new String(chars, 0, metrics.format(chars)));
+        assertEquals(expected.toString(), metrics.format());
+        assertEquals(10, metrics.format(new char[10]));
+    }
+
+    /**
+     * Testing that the newest frame replaces the pending one and that waiting worker is woken up
+     */
+    @Test
+    public void testFrameMailbox() throws InterruptedException {
+        final FrameMailbox<Integer> mailbox = new FrameMailbox<>();
+        assertNull(mailbox.post(1));
+        assertEquals(Integer.valueOf(1), mailbox.post(2));
+        assertEquals(Integer.valueOf(2), mailbox.take());
+        assertNull(mailbox.poll());
+
+        final int frames = 10000;
+        final long[] sum = {0};
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int frame = 0;
+                    while (frame != frames)
+                        sum[0] += frame = mailbox.take();
+                } catch (InterruptedException e) {
+                    sum[0] = -1;
+                }
+            }
+        });
+        worker.start();
+        long dropped = 0;
+        for(int i = 1; i <= frames; i++) {
+            Integer replaced = mailbox.post(i);
+            if(replaced != null)
+                dropped += replaced;
+        }
+        worker.join(10000);
+        assertFalse(worker.isAlive());
+        //Every frame is either taken or dropped
+        assertEquals((long) frames * (frames + 1) / 2, sum[0] + dropped);
+
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mailbox.take();
+                } catch (InterruptedException e) {
+                    sum[0] = -1;
+                }
+            }
+        });
+        worker.start();
+        worker.interrupt();
+        worker.join(10000);
+        assertEquals(-1, sum[0]);
+    }
+
+    /**
+     * Testing that frames counted by several workers reach the last stage in submit order
+     * and that every frame is either processed or dropped
+     */
+    @Test
+    public void testFramePipeline() throws InterruptedException {
+        final int frames = 2000;
+        final AtomicInteger dropped = new AtomicInteger();
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger disordered = new AtomicInteger();
+        final CountDownLatch lastFrame = new CountDownLatch(1);
+        FramePipeline<Integer> pipeline = FramePipeline.<Integer>builder()
+                .addStage("square", 3, new FramePipeline.Stage<Integer, Long>() {
+                    @Override
+                    public Long process(Integer input) {
+                        return (long) input * input;
+                    }
+                })
+                .addStage("check", 1, new FramePipeline.Stage<Long, Void>() {
+                    private long mLast = 0;
+                    @Override
+                    public Void process(Long input) {
+                        if(input <= mLast)
+                            disordered.incrementAndGet();
+                        mLast = input;
+                        processed.incrementAndGet();
+                        if(input == (long) frames * frames)
+                            lastFrame.countDown();
+                        return null;
+                    }
+                })
+                .build(new FramePipeline.DropListener() {
+                    @Override
+                    public void onDropped(Object frame) {
+                        dropped.incrementAndGet();
+                    }
+                });
+        pipeline.start();
+        for(int i = 1; i <= frames; i++)
+            pipeline.submit(i);
+        assertTrue(lastFrame.await(10, TimeUnit.SECONDS));
+        //Frames older than the last one may still be finishing, they are dropped as stale
+        for(int i = 0; i < 1000 && processed.get() + dropped.get() < frames; i++)
+            Thread.sleep(10);
+        pipeline.stop();
+        assertEquals(0, disordered.get());
+        assertEquals(frames, processed.get() + dropped.get());
+    }
+
+    /**
+     * Testing that stop waits until the workers leave their frames and that frames submitted afterwards are dropped
+     */
+    @Test
+    public void testFramePipelineStop() throws InterruptedException {
+        final AtomicInteger busy = new AtomicInteger();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final AtomicInteger dropped = new AtomicInteger();
+        FramePipeline<Integer> pipeline = FramePipeline.<Integer>builder()
+                .addStage("slow", 1, new FramePipeline.Stage<Integer, Void>() {
+                    @Override
+                    public Void process(Integer input) throws InterruptedException {
+                        busy.incrementAndGet();
+                        entered.countDown();
+                        try {
+                            Thread.sleep(10000);
+                        }finally {
+                            busy.decrementAndGet();
+                        }
+                        return null;
+                    }
+                })
+                .build(new FramePipeline.DropListener() {
+                    @Override
+                    public void onDropped(Object frame) {
+                        dropped.incrementAndGet();
+                    }
+                });
+        pipeline.start();
+        pipeline.submit(1);
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        pipeline.stop();
+        assertEquals(0, busy.get());
+        pipeline.submit(2);
+        assertEquals(1, dropped.get());
+    }
+
+    /**
+     * Testing that RGB_565 decoding is allowed only with quantization that does not need more precision
+     * and that strip streaming is not combined with sampling
+     */
+    @Test
+    public void testDecodeRgb565Config(){
+        new Histogram.ConfigBuilder().setQuantization(Quantization.RGB565).setDecodeRgb565(true).build();
+        new Histogram.ConfigBuilder().setQuantization(Quantization.RGB444).setDecodeRgb565(true).setBitmapReuse(true).build();
+        new Histogram.ConfigBuilder().setBitmapReuse(true).build();
+        for(Quantization quantization : new Quantization[]{null, Quantization.RGB666}) {
+            try {
+                new Histogram.ConfigBuilder().setQuantization(quantization).setDecodeRgb565(true).build();
+                fail("RGB_565 decoding is accepted with " + quantization);
+            }catch (IllegalStateException e){
+                //expected
+            }
+        }
+        new Histogram.ConfigBuilder().setStripStreaming(Histogram.DEFAULT_STRIP_ROWS).setBitmapReuse(true).build();
+        try {
+            new Histogram.ConfigBuilder().setSampling(4).setStripStreaming(Histogram.DEFAULT_STRIP_ROWS).build();
+            fail("Strip streaming is accepted with sampling");
+        }catch (IllegalStateException e){
+            //expected
+        }
+    }
+
+    /**
+     * Testing NV21 histogram restricted to a region of interest: a white square in the middle of a gray frame
+     */
+    @Test
+    public void testRegionOfInterest(){
+        int width = 64, height = 48;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Arrays.fill(nv21, (byte) 128);
+        for(int y = 12; y < 36; y++)
+            Arrays.fill(nv21, y * width + 16, y * width + 48, (byte) 255);
+        Histogram histogram = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(2).setRegionOfInterest(new RegionOfInterest(0.25F, 0.25F, 0.75F, 0.75F), false).build());
+        assertEquals(16 * 12, histogram.getTotalColorsCount());
+        assertEquals(1, histogram.getSortedColors().length);
+        assertEquals(0xffffffff, histogram.getSortedColors()[0].color);
+
+        //Ellipse inscribed into the whole frame leaves the gray corners out, the white square is inside of it
+        Histogram ellipse = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).setRegionOfInterest(new RegionOfInterest(0, 0, 1, 1), true).build());
+        assertEquals(Math.PI / 4 * width * height, ellipse.getTotalColorsCount(), width);
+        Histogram.Color[] colors = ellipse.getSortedColors();
+        assertEquals(2, colors.length);
+        assertEquals(0xffffffff, colors[1].color);
+        assertEquals(32 * 24, colors[1].getCount());
+        try {
+            new RegionOfInterest(0.5F, 0, 0.5F, 1);
+            fail("Empty region is accepted");
+        }catch (IllegalArgumentException e){
+            //expected
+        }
+    }
+
+    /**
+     * Testing per tile histograms of NV21 frame where the top left quarter is white and the rest is gray
+     */
+    @Test
+    public void testGridHistogram(){
+        int width = 64, height = 48;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Arrays.fill(nv21, (byte) 128);
+        for(int y = 0; y < height / 2; y++)
+            Arrays.fill(nv21, y * width, y * width + width / 2, (byte) 255);
+        GridHistogram grid = GridHistogram.instantiateFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height, 4, 4,
+                new Histogram.ConfigBuilder().setScaleBy(2).build());
+        assertEquals(4, grid.getColumns());
+        assertEquals(4, grid.getRows());
+        for(int row = 0; row < 4; row++)
+            for(int column = 0; column < 4; column++) {
+                Histogram tile = grid.getTile(column, row);
+                assertEquals(8 * 6, tile.getTotalColorsCount());
+                Histogram.Color[] colors = tile.getTopColors(5);
+                assertEquals(1, colors.length);
+                assertEquals(100F, tile.getColorShare(colors[0]), 0F);
+                int expected = column < 2 && row < 2 ? 0xffffffff : Quantization.RGB444.quantize(0xff808080);
+                assertEquals(expected, colors[0].color);
+            }
+
+        //Grid over the region of interest, the white quarter is the top left tile
+        GridHistogram region = GridHistogram.instantiateFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height, 2, 2,
+                new Histogram.ConfigBuilder().setScaleBy(1).setRegionOfInterest(new RegionOfInterest(0, 0, 1, 0.5F), false).build());
+        assertEquals(0xffffffff, region.getTile(0, 0).getTopColors(1)[0].color);
+        assertEquals(32 * 12, region.getTile(1, 1).getTotalColorsCount());
+        assertEquals(1, region.getTile(1, 1).getTopColors(5).length);
+
+        //Options the tiles are not counted with are rejected rather than ignored
+        Histogram.ConfigBuilder[] unsupported = {
+                new Histogram.ConfigBuilder().setPalette(4),
+                new Histogram.ConfigBuilder().setOctree(64),
+                new Histogram.ConfigBuilder().setColorSpace(ColorSpace.HSV),
+                new Histogram.ConfigBuilder().setSampling(4),
+                new Histogram.ConfigBuilder().setRegionOfInterest(new RegionOfInterest(0, 0, 1, 1), true)};
+        for(Histogram.ConfigBuilder builder : unsupported) {
+            try {
+                GridHistogram.instantiateFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height, 2, 2, builder.build());
+                fail("Grid histogram accepts unsupported config");
+            }catch (IllegalArgumentException e){
+                //expected
+            }
+        }
+    }
+
+    /**
+     * Testing perceptual binning of a noisy NV21 frame: noise spreads over many RGB keys but few bins,
+     * bins centroids are reported and parallel counting gives the sequential result
+     */
+    @Test
+    public void testColorSpaceHistogram(){
+        int width = 64, height = 48;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Random random = new Random(3);
+        for(int i = 0; i < width * height; i++)
+            nv21[i] = (byte) (150 + random.nextInt(8));
+        Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+        Histogram exact = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                new Histogram.ConfigBuilder().setScaleBy(1).build());
+        for(ColorSpace colorSpace : ColorSpace.values()) {
+            Histogram binned = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                    new Histogram.ConfigBuilder().setScaleBy(1).setColorSpace(colorSpace).build());
+            assertEquals(width * height, binned.getTotalColorsCount());
+            Histogram.Color[] colors = binned.getSortedColors();
+            assertTrue(colors.length < exact.getSortedColors().length);
+            assertTrue(colors.length <= 2);
+            //Centroid of gray pixels is gray
+            int top = colors[0].color;
+            assertEquals((top >> 16) & 0xff, top & 0xff);
+            Histogram parallel = Histogram.instantiateHistogramFromYuv(nv21, 17 /*ImageFormat.NV21*/, width, height,
+                    new Histogram.ConfigBuilder().setScaleBy(1).setColorSpace(colorSpace).setParallelism(4).build());
+            Histogram.Color[] actual = parallel.getSortedColors();
+            assertEquals(colors.length, actual.length);
+            for(int i = 0; i < colors.length; i++) {
+                assertEquals(colors[i], actual[i]);
+                assertEquals(colors[i].getCount(), actual[i].getCount());
+            }
+        }
+        new Histogram.ConfigBuilder().setColorSpace(ColorSpace.LAB).setDecodeRgb565(true).build();
+        try {
+            new Histogram.ConfigBuilder().setColorSpace(ColorSpace.HSV).setOctree(64).build();
+            fail("Color space binning is accepted with octree");
+        }catch (IllegalStateException e){
+            //expected
+        }
+    }
+}
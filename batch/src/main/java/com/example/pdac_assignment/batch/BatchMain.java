@@ -0,0 +1,127 @@
+package com.example.pdac_assignment.batch;
+
+import com.example.pdac_assignment.core.Quantization;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Command line batch: results go to the standard output (or --out file), the summary goes to the standard error
+ */
+public final class BatchMain {
+    private static final String USAGE = "Usage: [--workers N] [--max-decoded N] [--top K] [--palette K] [--quantization RGB444|RGB555|RGB565|RGB666]\n"
+            + "       [--scale-by N | --max-boundary PX] [--out FILE] <image or directory>...";
+
+    private BatchMain(){
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BatchPaletteExtraction.Builder builder = new BatchPaletteExtraction.Builder();
+        List<File> inputs = new ArrayList<>();
+        String out = null;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if(!arg.startsWith("--")) {
+                    inputs.add(new File(arg));
+                    continue;
+                }
+                if(i + 1 == args.length)
+                    throw new IllegalArgumentException("Missing value of " + arg);
+                String value = args[++i];
+                switch (arg) {
+                    case "--workers":
+                        builder.setWorkers(Integer.parseInt(value));
+                        break;
+                    case "--max-decoded":
+                        builder.setMaxDecodedImages(Integer.parseInt(value));
+                        break;
+                    case "--top":
+                        builder.setTopColors(Integer.parseInt(value));
+                        break;
+                    case "--palette":
+                        builder.setPalette(Integer.parseInt(value));
+                        break;
+                    case "--quantization":
+                        builder.setQuantization(Quantization.valueOf(value.toUpperCase(Locale.US)));
+                        break;
+                    case "--scale-by":
+                        builder.setScaleBy(Integer.parseInt(value));
+                        break;
+                    case "--max-boundary":
+                        builder.setMaxBoundary(Integer.parseInt(value));
+                        break;
+                    case "--out":
+                        out = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if(inputs.isEmpty())
+                throw new IllegalArgumentException("No images");
+        }catch (IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        List<File> files = listImages(inputs);
+        Writer writer = new OutputStreamWriter(out != null ? new FileOutputStream(out) : System.out, StandardCharsets.UTF_8);
+        BatchPaletteExtraction.Summary summary;
+        try {
+            summary = builder.build().run(files, new TextResultSink(writer));
+        }finally {
+            if(out != null)
+                writer.close();
+            else
+                writer.flush();
+        }
+        System.err.println(String.format(Locale.US, "%d images (%d failed) in %.2f s, %.1f images/sec",
+                summary.imagesCount, summary.failedCount, summary.elapsedNanos / 1e9, summary.getImagesPerSecond()));
+    }
+
+    /**
+     * Expands directories (recursively) into image files of the formats ImageIO can read, in name order
+     * @param inputs files and directories
+     * @return
+     */
+    static List<File> listImages(List<File> inputs){
+        HashSet<String> suffixes = new HashSet<>();
+        for(String suffix : ImageIO.getReaderFileSuffixes())
+            suffixes.add(suffix.toLowerCase(Locale.US));
+        List<File> files = new ArrayList<>();
+        for(File input : inputs)
+            collectImages(input, suffixes, files, true);
+        return files;
+    }
+
+    // Helper function, explicitly listed files are taken whatever their extension is
+    private static void collectImages(File file, HashSet<String> suffixes, List<File> files, boolean explicit){
+        if(file.isDirectory()) {
+            File[] children = file.listFiles();
+            if(children == null)
+                return;
+            Arrays.sort(children);
+            for(File child : children)
+                collectImages(child, suffixes, files, false);
+            return;
+        }
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if(explicit || (dot >= 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.US))))
+            files.add(file);
+    }
+}
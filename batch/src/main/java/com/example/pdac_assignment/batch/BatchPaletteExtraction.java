@@ -0,0 +1,347 @@
+package com.example.pdac_assignment.batch;
+
+import androidx.annotation.NonNull;
+
+import com.example.pdac_assignment.core.ColorCounter;
+import com.example.pdac_assignment.core.ColorCounting;
+import com.example.pdac_assignment.core.PaletteExtraction;
+import com.example.pdac_assignment.core.Quantization;
+import com.example.pdac_assignment.core.TopColorsHeap;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Offline top colors (or palette) extraction over many image files on a plain JVM.
+ * Images are processed by a fixed pool of workers. Submission blocks once a few images per worker are pending
+ * (backpressure, the files list is consumed lazily) and at most maxDecodedImages decoded images are held at once.
+ * Images are decoded subsampled (ImageIO source subsampling), so a decoded image is of the analysis size only.
+ * Results are streamed to the sink as soon as an image is processed, in completion order
+ */
+public class BatchPaletteExtraction {
+    public static final int DEFAULT_TOP_COLORS = 5;
+    //Same scaling factor as the app histograms default one
+    public static final int DEFAULT_SCALE_BY = 4;
+    //Pending (submitted, not yet processed) images per worker
+    private static final int PENDING_PER_WORKER = 2;
+    //Palette k-means refinement caps (see Histogram.ConfigBuilder.setPaletteRefinement)
+    private static final int PALETTE_ITERATIONS = 4;
+    private static final long PALETTE_NANOS = 4000000L;
+
+    // Receiver of per image results, calls are serialized so sinks need not be thread safe
+    public interface ResultSink{
+        /**
+         * @param result
+         * @throws IOException batch keeps processing, the first sink error is thrown by run
+         */
+        void accept(@NonNull Result result) throws IOException;
+    }
+
+    // Top colors of a single image with its timing
+    public static class Result{
+        public final File file;
+        //Packed entries (see TopColorsHeap) ordered from the most popular color, empty if the image failed
+        public final long[] colors;
+        //Counted pixels, shares are colors counts divided by it
+        public final int pixelsCount;
+        //Decoding, waiting for a decoded image slot (see setMaxDecodedImages) is not included
+        public final long decodeNanos;
+        //Counting and top colors (or palette) selection
+        public final long countNanos;
+        //Failure cause, null if the image is processed
+        public final Exception error;
+
+        Result(File file, long[] colors, int pixelsCount, long decodeNanos, long countNanos, Exception error) {
+            this.file = file;
+            this.colors = colors;
+            this.pixelsCount = pixelsCount;
+            this.decodeNanos = decodeNanos;
+            this.countNanos = countNanos;
+            this.error = error;
+        }
+
+        public int getColor(int index){
+            return TopColorsHeap.colorOf(colors[index]);
+        }
+
+        /**
+         * @param index
+         * @return share of the color pixels in percents
+         */
+        public float getShare(int index){
+            return TopColorsHeap.countOf(colors[index]) * 100F / pixelsCount;
+        }
+    }
+
+    // Aggregate of a batch run
+    public static class Summary{
+        public final int imagesCount;
+        public final int failedCount;
+        public final long elapsedNanos;
+
+        Summary(int imagesCount, int failedCount, long elapsedNanos) {
+            this.imagesCount = imagesCount;
+            this.failedCount = failedCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double getImagesPerSecond(){
+            return elapsedNanos == 0 ? 0 : imagesCount * 1e9 / elapsedNanos;
+        }
+    }
+
+    private final int mWorkers;
+    private final Semaphore mDecodedImages;
+    private final int mTopColors;
+    private final Quantization mQuantization;
+    //Palette size, null for top counted colors
+    private final Integer mPaletteColors;
+    private final int mScaleBy;
+    //Images are subsampled to fit it if set, scale by is ignored then
+    private final Integer mMaxBoundary;
+
+    private BatchPaletteExtraction(Builder builder) {
+        mWorkers = builder.mWorkers;
+        //Fair, so a worker waiting to decode is not overtaken
+        mDecodedImages = new Semaphore(builder.mMaxDecodedImages, true);
+        mTopColors = builder.mTopColors;
+        mQuantization = builder.mQuantization;
+        mPaletteColors = builder.mPaletteColors;
+        mScaleBy = builder.mScaleBy;
+        mMaxBoundary = builder.mMaxBoundary;
+    }
+
+    //Builder helper class for setting batch params
+    public static class Builder{
+        private int mWorkers = Runtime.getRuntime().availableProcessors();
+        private int mMaxDecodedImages = mWorkers;
+        private int mTopColors = DEFAULT_TOP_COLORS;
+        private Quantization mQuantization = null;
+        private Integer mPaletteColors = null;
+        private int mScaleBy = DEFAULT_SCALE_BY;
+        private Integer mMaxBoundary = null;
+
+        /**
+         * @param workers amount of threads decoding and counting images
+         */
+        public Builder setWorkers(int workers){
+            if(workers < 1)
+                throw new IllegalArgumentException("Workers amount must be positive: " + workers);
+            mWorkers = workers;
+            return this;
+        }
+
+        /**
+         * @param maxDecodedImages decoded images held in memory at once, workers wait for a slot before decoding
+         */
+        public Builder setMaxDecodedImages(int maxDecodedImages){
+            if(maxDecodedImages < 1)
+                throw new IllegalArgumentException("Decoded images cap must be positive: " + maxDecodedImages);
+            mMaxDecodedImages = maxDecodedImages;
+            return this;
+        }
+
+        /**
+         * @param topColors amount of reported colors
+         */
+        public Builder setTopColors(int topColors){
+            if(topColors < 1)
+                throw new IllegalArgumentException("Top colors amount must be positive: " + topColors);
+            mTopColors = topColors;
+            return this;
+        }
+
+        /**
+         * @param quantization null for exact colors counting
+         */
+        public Builder setQuantization(Quantization quantization){
+            mQuantization = quantization;
+            return this;
+        }
+
+        /**
+         * Counted colors are reduced to a palette (see PaletteExtraction) instead of reporting top counted colors
+         * @param colors palette size, null for top counted colors
+         */
+        public Builder setPalette(Integer colors){
+            if(colors != null && colors < 1)
+                throw new IllegalArgumentException("Palette must have at least one color: " + colors);
+            mPaletteColors = colors;
+            return this;
+        }
+
+        /**
+         * @param scaleBy subsampling step of decoding
+         */
+        public Builder setScaleBy(int scaleBy){
+            if(scaleBy < 1)
+                throw new IllegalArgumentException("Scale must be positive: " + scaleBy);
+            mScaleBy = scaleBy;
+            mMaxBoundary = null;
+            return this;
+        }
+
+        /**
+         * @param boundary images are subsampled by a power of 2 until they fit the boundary
+         */
+        public Builder setMaxBoundary(int boundary){
+            if(boundary < 1)
+                throw new IllegalArgumentException("Boundary must be positive: " + boundary);
+            mMaxBoundary = boundary;
+            return this;
+        }
+
+        public BatchPaletteExtraction build(){
+            return new BatchPaletteExtraction(this);
+        }
+    }
+
+    /**
+     * Processes all the images, returns once every submitted image is processed and delivered to the sink
+     * @param files images, iterated lazily as the workers catch up
+     * @param sink
+     * @return
+     * @throws InterruptedException pending images are abandoned
+     * @throws IOException the first sink failure
+     */
+    public Summary run(@NonNull Iterable<File> files, @NonNull ResultSink sink) throws InterruptedException, IOException{
+        ExecutorService executor = Executors.newFixedThreadPool(mWorkers);
+        Semaphore pending = new Semaphore(mWorkers * PENDING_PER_WORKER);
+        Delivery delivery = new Delivery(sink);
+        long start = System.nanoTime();
+        try {
+            for(File file : files) {
+                pending.acquire();
+                executor.execute(new Task(file, pending, delivery));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }finally {
+            executor.shutdownNow();
+        }
+        if(delivery.mSinkError != null)
+            throw delivery.mSinkError;
+        return new Summary(delivery.mImages.get(), delivery.mFailed.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Processes a single image on the calling thread
+     * @param file
+     * @return failed result if the image can not be decoded
+     */
+    public Result process(@NonNull File file){
+        try {
+            mDecodedImages.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(file, new long[0], 0, 0, 0, e);
+        }
+        //Waiting for a decoded image slot is queueing, not decoding
+        long start = System.nanoTime();
+        try {
+            BufferedImage image = decode(file);
+            long decoded = System.nanoTime();
+            BufferedImagePixelRows rows = new BufferedImagePixelRows(image);
+            ColorCounter counter = ColorCounting.obtainCounter(mQuantization);
+            rows.countRows(0, rows.getRowsCount(), counter);
+            long[] colors = mPaletteColors != null
+                    ? PaletteExtraction.extract(counter, mPaletteColors, PALETTE_ITERATIONS, PALETTE_NANOS)
+                    : ColorCounting.topColors(counter, mTopColors);
+            return new Result(file, colors, rows.getPixelsCount(), decoded - start, System.nanoTime() - decoded, null);
+        }catch (Exception e){
+            return new Result(file, new long[0], 0, System.nanoTime() - start, 0, e);
+        }finally {
+            mDecodedImages.release();
+        }
+    }
+
+    // Helper function, decodes the image subsampled to the analysis size
+    private BufferedImage decode(File file) throws IOException{
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if(input == null)
+            throw new IOException("Unable to open " + file);
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext())
+                throw new IOException("Unsupported image format " + file);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sampleSize = mMaxBoundary != null ? calcSampleSize(reader.getWidth(0), reader.getHeight(0), mMaxBoundary) : mScaleBy;
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+                return reader.read(0, param);
+            }finally {
+                reader.dispose();
+            }
+        }finally {
+            input.close();
+        }
+    }
+
+    // Helper function to calculate sample size
+    private static int calcSampleSize(int width, int height, int boundary){
+        int sampleSize = 1;
+        while (height / sampleSize > boundary || width / sampleSize > boundary)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    // Results delivery to the sink with the batch counters
+    private static class Delivery{
+        private final ResultSink mSink;
+        private final AtomicInteger mImages = new AtomicInteger();
+        private final AtomicInteger mFailed = new AtomicInteger();
+        //The first sink failure, guarded by the delivery
+        private IOException mSinkError = null;
+
+        Delivery(ResultSink sink) {
+            mSink = sink;
+        }
+
+        synchronized void deliver(Result result){
+            mImages.incrementAndGet();
+            if(result.error != null)
+                mFailed.incrementAndGet();
+            try {
+                mSink.accept(result);
+            } catch (IOException e) {
+                if(mSinkError == null)
+                    mSinkError = e;
+            }
+        }
+    }
+
+    private class Task implements Runnable{
+        private final File mFile;
+        private final Semaphore mPending;
+        private final Delivery mDelivery;
+
+        Task(File file, Semaphore pending, Delivery delivery) {
+            mFile = file;
+            mPending = pending;
+            mDelivery = delivery;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mDelivery.deliver(process(mFile));
+            }finally {
+                mPending.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.pdac_assignment.batch;
+
+import androidx.annotation.NonNull;
+
+import com.example.pdac_assignment.core.ColorCounter;
+import com.example.pdac_assignment.core.PixelRows;
+import com.example.pdac_assignment.core.PixelsBuffer;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Decoded image rows, pixels are pulled in bulk row strips into the thread scratch buffer
+ * and counted in memory order (see app BitmapPixelRows)
+ */
+class BufferedImagePixelRows implements PixelRows {
+    private final BufferedImage mImage;
+
+    BufferedImagePixelRows(@NonNull BufferedImage image) {
+        mImage = image;
+    }
+
+    @Override
+    public int getRowsCount() {
+        return mImage.getHeight();
+    }
+
+    @Override
+    public int getRowWidth() {
+        return mImage.getWidth();
+    }
+
+    @Override
+    public int getPixelsCount() {
+        return getRowsCount() * getRowWidth();
+    }
+
+    @Override
+    public void countRows(int fromRow, int toRow, @NonNull ColorCounter counter) {
+        int width = mImage.getWidth();
+        int[] pixels = PixelsBuffer.obtain(width);
+        int rowsPerStrip = pixels.length / width;
+        for(int y = fromRow; y < toRow; y += rowsPerStrip) {
+            int rows = Math.min(rowsPerStrip, toRow - y);
+            mImage.getRGB(0, y, width, rows, pixels, 0, width);
+            counter.incrementAll(pixels, 0, width * rows);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.pdac_assignment.batch;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes a tab separated line per image: path, decode and count milliseconds, counted pixels,
+ * then a "#rrggbb share%" column per color. Failed images have ERROR and the failure message instead.
+ * Every line is flushed, so results can be followed while the batch runs
+ */
+public class TextResultSink implements BatchPaletteExtraction.ResultSink {
+    private final Writer mWriter;
+
+    /**
+     * @param writer not closed by the sink
+     */
+    public TextResultSink(@NonNull Writer writer) {
+        mWriter = writer;
+    }
+
+    @Override
+    public void accept(@NonNull BatchPaletteExtraction.Result result) throws IOException {
+        StringBuilder line = new StringBuilder(result.file.getPath());
+        if(result.error != null)
+            line.append("\tERROR\t").append(result.error);
+        else {
+            line.append(String.format(Locale.US, "\t%.1f\t%.1f\t%d", result.decodeNanos / 1e6, result.countNanos / 1e6, result.pixelsCount));
+            for(int i = 0; i < result.colors.length; i++)
+                line.append(String.format(Locale.US, "\t#%06x %.2f%%", result.getColor(i) & 0xffffff, result.getShare(i)));
+        }
+        line.append('\n');
+        mWriter.write(line.toString());
+        mWriter.flush();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.pdac_assignment.batch;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Local unit tests of batch extraction over generated PNG images
+ */
+public class BatchPaletteExtractionTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testBatch() throws IOException, InterruptedException {
+        List<File> files = new ArrayList<>();
+        for(int i = 0; i < 12; i++)
+            files.add(writeImage("image" + i + ".png", 0xff000000 | (i * 20) << 16, 0xff0000ff));
+        File broken = mFolder.newFile("broken.png");
+        files.add(broken);
+
+        final HashMap<File, BatchPaletteExtraction.Result> results = new HashMap<>();
+        BatchPaletteExtraction.Summary summary = new BatchPaletteExtraction.Builder()
+                .setWorkers(3)
+                .setMaxDecodedImages(1)
+                .setTopColors(3)
+                .setScaleBy(2)
+                .build()
+                .run(files, new BatchPaletteExtraction.ResultSink() {
+                    @Override
+                    public void accept(BatchPaletteExtraction.Result result) {
+                        assertNull(results.put(result.file, result));
+                    }
+                });
+        assertEquals(13, summary.imagesCount);
+        assertEquals(1, summary.failedCount);
+        assertTrue(summary.getImagesPerSecond() > 0);
+        assertNotNull(results.get(broken).error);
+        for(int i = 0; i < 12; i++) {
+            BatchPaletteExtraction.Result result = results.get(files.get(i));
+            assertNull(result.error);
+            //Three quarters of the image are of the first color, subsampled by 2
+            assertEquals(16 * 8, result.pixelsCount);
+            assertEquals(2, result.colors.length);
+            assertEquals(0xff000000 | (i * 20) << 16, result.getColor(0));
+            assertEquals(75F, result.getShare(0), 0F);
+            assertEquals(25F, result.getShare(1), 0F);
+        }
+
+        StringWriter writer = new StringWriter();
+        new TextResultSink(writer).accept(results.get(files.get(1)));
+        assertEquals(files.get(1).getPath(), writer.toString().split("\t")[0]);
+        assertTrue(writer.toString().endsWith("\t#140000 75.00%\t#0000ff 25.00%\n"));
+    }
+
+    @Test
+    public void testListImages() throws IOException {
+        writeImage("b.png", 0xffffffff, 0xffffffff);
+        mFolder.newFolder("nested");
+        writeImage("nested/a.png", 0xffffffff, 0xffffffff);
+        mFolder.newFile("notes.txt");
+        List<File> files = BatchMain.listImages(Arrays.asList(mFolder.getRoot()));
+        assertEquals(Arrays.asList(new File(mFolder.getRoot(), "b.png"), new File(mFolder.getRoot(), "nested/a.png")), files);
+    }
+
+    // Helper function, 32x16 image, its right quarter is of the second color
+    private File writeImage(String name, int color, int color2) throws IOException {
+        BufferedImage image = new BufferedImage(32, 16, BufferedImage.TYPE_INT_ARGB);
+        for(int y = 0; y < 16; y++)
+            for(int x = 0; x < 32; x++)
+                image.setRGB(x, y, x < 24 ? color : color2);
+        File file = new File(mFolder.getRoot(), name);
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+}
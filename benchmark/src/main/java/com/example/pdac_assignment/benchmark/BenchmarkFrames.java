@@ -0,0 +1,123 @@
+package com.example.pdac_assignment.benchmark;
+
+import com.example.pdac_assignment.core.ArgbPixelRows;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Benchmark input frames, synthetic ones of a given colors cardinality or ones derived from test assets
+ */
+final class BenchmarkFrames {
+    //System property with the test assets directory, set by the jmh gradle task
+    static final String ASSETS_PROPERTY = "benchmark.assets";
+    //Random sources are seeded so every run counts the same frames
+    private static final long SEED = 42;
+
+    private BenchmarkFrames(){
+    }
+
+    /**
+     * @param resolution WIDTHxHEIGHT
+     * @return width and height
+     */
+    static int[] parseResolution(String resolution){
+        String[] parts = resolution.split("x");
+        if(parts.length != 2)
+            throw new IllegalArgumentException("Resolution must be WIDTHxHEIGHT: " + resolution);
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    /**
+     * Creates frame pixels
+     * @param source "random" for random 24 bit colors, "paletteN" for N random colors
+     *               or an asset file name (e.g. test_landscape.jpg) scaled to the frame size
+     * @param width
+     * @param height
+     * @return
+     * @throws IOException
+     */
+    static ArgbPixelRows create(String source, int width, int height) throws IOException {
+        return new ArgbPixelRows(createPixels(source, width, height), width, height);
+    }
+
+    /**
+     * Creates frame pixels (see create)
+     * @param source
+     * @param width
+     * @param height
+     * @return ARGB pixels
+     * @throws IOException
+     */
+    static int[] createPixels(String source, int width, int height) throws IOException {
+        if(source.equals("random"))
+            return randomPixels(width * height, 1 << 24);
+        if(source.startsWith("palette"))
+            return randomPixels(width * height, Integer.parseInt(source.substring("palette".length())));
+        return assetPixels(source, width, height);
+    }
+
+    /**
+     * Converts ARGB pixels to NV21 frame (full range BT.601), chroma is taken from the top left pixel of each 2x2 block
+     * @param pixels
+     * @param width even
+     * @param height even
+     * @return
+     */
+    static byte[] toNv21(int[] pixels, int width, int height){
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for(int y = 0; y < height; y++)
+            for(int x = 0; x < width; x++) {
+                int color = pixels[y * width + x];
+                int r = (color >> 16) & 0xff, g = (color >> 8) & 0xff, b = color & 0xff;
+                nv21[y * width + x] = (byte) clamp(Math.round(0.299F * r + 0.587F * g + 0.114F * b));
+                if((x & 1) == 0 && (y & 1) == 0) {
+                    int uv = width * height + (y >> 1) * width + x;
+                    nv21[uv] = (byte) clamp(Math.round(128 + 0.5F * r - 0.418688F * g - 0.081312F * b));
+                    nv21[uv + 1] = (byte) clamp(Math.round(128 - 0.168736F * r - 0.331264F * g + 0.5F * b));
+                }
+            }
+        return nv21;
+    }
+
+    private static int clamp(int value){
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    // Helper function, pixels are picked out of palette of colorsCount random colors
+    private static int[] randomPixels(int count, int colorsCount){
+        Random random = new Random(SEED);
+        int[] palette = new int[colorsCount];
+        for(int i = 0; i < colorsCount; i++)
+            palette[i] = 0xff000000 | random.nextInt(1 << 24);
+        int[] pixels = new int[count];
+        //Neighbour pixels repeat as in camera frames, runs are 1 to 8 pixels long
+        for(int i = 0; i < count; ) {
+            int color = palette[random.nextInt(colorsCount)];
+            for(int run = 1 + random.nextInt(8); run > 0 && i < count; run--)
+                pixels[i++] = color;
+        }
+        return pixels;
+    }
+
+    // Helper function, asset is decoded and scaled (nearest neighbour) to the frame size
+    private static int[] assetPixels(String fileName, int width, int height) throws IOException {
+        String assets = System.getProperty(ASSETS_PROPERTY);
+        if(assets == null)
+            throw new IllegalStateException(ASSETS_PROPERTY + " property is not set");
+        BufferedImage image = ImageIO.read(new File(assets, fileName));
+        if(image == null)
+            throw new IOException("Unable to decode " + fileName);
+        int[] pixels = new int[width * height];
+        for(int y = 0; y < height; y++) {
+            int sourceY = (int) ((long) y * image.getHeight() / height);
+            for(int x = 0; x < width; x++)
+                pixels[y * width + x] = image.getRGB((int) ((long) x * image.getWidth() / width), sourceY);
+        }
+        return pixels;
+    }
+}
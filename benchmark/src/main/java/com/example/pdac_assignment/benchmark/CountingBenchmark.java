@@ -0,0 +1,157 @@
+package com.example.pdac_assignment.benchmark;
+
+import com.example.pdac_assignment.core.ArgbPixelRows;
+import com.example.pdac_assignment.core.ColorCountTable;
+import com.example.pdac_assignment.core.ColorCounter;
+import com.example.pdac_assignment.core.ColorCounting;
+import com.example.pdac_assignment.core.ColorSpace;
+import com.example.pdac_assignment.core.ColorSpaceColorCounter;
+import com.example.pdac_assignment.core.GridColorCounter;
+import com.example.pdac_assignment.core.OctreeColorCounter;
+import com.example.pdac_assignment.core.Quantization;
+import com.example.pdac_assignment.core.QuantizedColorCounter;
+import com.example.pdac_assignment.core.YuvPixelRows;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame counting throughput. Frames per second is the primary score, "pixels" secondary score is pixels per second,
+ * gc profiler "gc.alloc.rate.norm" is allocated bytes per frame
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CountingBenchmark {
+    @Param({"320x240", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"palette16", "palette4096", "random", "test_landscape.jpg", "test_redish_image.jpg"})
+    public String source;
+
+    private ArgbPixelRows mRows;
+    private YuvPixelRows mNv21Rows;
+    private int mPixelsCount;
+    private int mParallelism;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int[] size = BenchmarkFrames.parseResolution(resolution);
+        int[] pixels = BenchmarkFrames.createPixels(source, size[0], size[1]);
+        mRows = new ArgbPixelRows(pixels, size[0], size[1]);
+        mNv21Rows = YuvPixelRows.nv21(BenchmarkFrames.toNv21(pixels, size[0], size[1]), size[0], size[1], 1);
+        mPixelsCount = size[0] * size[1];
+        mParallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    // Counted pixels, reported as a rate next to the frames rate
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Pixels{
+        public long pixels;
+    }
+
+    // Dense bins counter, reused across frames as the histogram worker thread does
+    @State(Scope.Thread)
+    public static class QuantizedCounter{
+        final QuantizedColorCounter counter = new QuantizedColorCounter(Quantization.RGB565);
+    }
+
+    // Octree of the fixed leaves budget, reused across frames as the histogram worker thread does
+    @State(Scope.Thread)
+    public static class OctreeCounter{
+        final OctreeColorCounter counter = new OctreeColorCounter(256);
+    }
+
+    @Benchmark
+    public ColorCounter countExact(Pixels pixels){
+        ColorCountTable table = new ColorCountTable();
+        mRows.countRows(0, mRows.getRowsCount(), table);
+        pixels.pixels += mPixelsCount;
+        return table;
+    }
+
+    @Benchmark
+    public ColorCounter countQuantized(Pixels pixels, QuantizedCounter quantized){
+        quantized.counter.clear();
+        mRows.countRows(0, mRows.getRowsCount(), quantized.counter);
+        pixels.pixels += mPixelsCount;
+        return quantized.counter.toTable();
+    }
+
+    @Benchmark
+    public ColorCounter countOctree(Pixels pixels, OctreeCounter octree){
+        octree.counter.clear();
+        mRows.countRows(0, mRows.getRowsCount(), octree.counter);
+        pixels.pixels += mPixelsCount;
+        return octree.counter.toTable();
+    }
+
+    // Perceptual bins counter, reused across frames as the histogram worker thread does
+    @State(Scope.Thread)
+    public static class ColorSpaceCounter{
+        @Param({"HSV", "LAB"})
+        public ColorSpace colorSpace;
+        ColorSpaceColorCounter counter;
+
+        @Setup(Level.Trial)
+        public void setup(){
+            counter = new ColorSpaceColorCounter(colorSpace);
+        }
+    }
+
+    @Benchmark
+    public ColorCounter countColorSpace(Pixels pixels, ColorSpaceCounter binned){
+        binned.counter.clear();
+        mRows.countRows(0, mRows.getRowsCount(), binned.counter);
+        pixels.pixels += mPixelsCount;
+        return binned.counter.toTable();
+    }
+
+    // 4x4 grid of dense bins counters, reused across frames as the histogram worker thread does
+    @State(Scope.Thread)
+    public static class GridCounter{
+        final GridColorCounter counter = new GridColorCounter(4, 4, Quantization.RGB444);
+    }
+
+    @Benchmark
+    public GridColorCounter countGrid(Pixels pixels, GridCounter grid){
+        grid.counter.clear();
+        grid.counter.count(mNv21Rows, 1);
+        pixels.pixels += mPixelsCount;
+        return grid.counter;
+    }
+
+    @Benchmark
+    public ColorCounter countParallel(Pixels pixels){
+        ColorCountTable table = new ColorCountTable();
+        ColorCounting.count(mRows, mParallelism, null, table);
+        pixels.pixels += mPixelsCount;
+        return table;
+    }
+
+    @Benchmark
+    public ColorCounter countNv21(Pixels pixels){
+        ColorCountTable table = new ColorCountTable();
+        mNv21Rows.countRows(0, mNv21Rows.getRowsCount(), table);
+        pixels.pixels += mPixelsCount;
+        return table;
+    }
+}
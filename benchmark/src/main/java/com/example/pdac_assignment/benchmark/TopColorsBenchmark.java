@@ -0,0 +1,56 @@
+package com.example.pdac_assignment.benchmark;
+
+import com.example.pdac_assignment.core.ArgbPixelRows;
+import com.example.pdac_assignment.core.ColorCountTable;
+import com.example.pdac_assignment.core.ColorCounting;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of top K colors selection out of a counted frame
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TopColorsBenchmark {
+    @Param({"1280x720"})
+    public String resolution;
+
+    @Param({"palette4096", "random", "test_landscape.jpg"})
+    public String source;
+
+    @Param({"5", "64"})
+    public int k;
+
+    private ColorCountTable mTable;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int[] size = BenchmarkFrames.parseResolution(resolution);
+        ArgbPixelRows rows = BenchmarkFrames.create(source, size[0], size[1]);
+        mTable = new ColorCountTable();
+        rows.countRows(0, rows.getRowsCount(), mTable);
+    }
+
+    @Benchmark
+    public long[] topColors(){
+        return ColorCounting.topColors(mTable, k);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Pixel rows source over decoded ARGB pixels, rows are counted straight out of the array
+ * (lattice rows are gathered into the thread scratch buffer)
+ */
+public class ArgbPixelRows implements PixelRows, PixelLattice, PixelSpans {
+    private final int[] mPixels;
+    private final int mWidth;
+    private final int mHeight;
+    //Offsets of the first counted pixel
+    private final int mX0;
+    private final int mY0;
+    private final int mStep;
+
+    public ArgbPixelRows(@NonNull int[] pixels, int width, int height) {
+        this(pixels, width, height, 0, 0, 1);
+        if(pixels.length < width * height)
+            throw new IllegalArgumentException("Pixels array is too small for " + width + "x" + height);
+    }
+
+    private ArgbPixelRows(@NonNull int[] pixels, int width, int height, int x0, int y0, int step) {
+        mPixels = pixels;
+        mWidth = width;
+        mHeight = height;
+        mX0 = x0;
+        mY0 = y0;
+        mStep = step;
+    }
+
+    @Override
+    public ArgbPixelRows lattice(int x0, int y0, int step) {
+        SampledCounting.checkLattice(x0, y0, step);
+        return new ArgbPixelRows(mPixels, mWidth, mHeight, x0, y0, step);
+    }
+
+    @Override
+    public int getRowsCount() {
+        return (mHeight - mY0 + mStep - 1) / mStep;
+    }
+
+    @Override
+    public int getRowWidth() {
+        return (mWidth - mX0 + mStep - 1) / mStep;
+    }
+
+    @Override
+    public int getPixelsCount() {
+        return getRowsCount() * getRowWidth();
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void countRows(int fromRow, int toRow, @NonNull ColorCounter counter) {
+        if(mStep == 1) {
+            counter.incrementAll(mPixels, fromRow * mWidth, (toRow - fromRow) * mWidth);
+            return;
+        }
+        for(int row = fromRow; row < toRow; row++)
+            countSpan(mY0 + row * mStep, mX0, mWidth, mStep, counter);
+    }
+
+    @Override
+    public void countSpan(int y, int fromX, int toX, int step, @NonNull ColorCounter counter) {
+        int offset = y * mWidth;
+        if(step == 1) {
+            counter.incrementAll(mPixels, offset + fromX, toX - fromX);
+            return;
+        }
+        int[] pixels = PixelsBuffer.obtain((toX - fromX + step - 1) / step);
+        int n = 0;
+        for(int x = fromX; x < toX; x += step)
+            pixels[n++] = mPixels[offset + x];
+        counter.incrementAll(pixels, 0, n);
+    }
+}
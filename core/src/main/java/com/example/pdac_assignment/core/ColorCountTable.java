@@ -0,0 +1,189 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Primitive int -> int hash table used as a counting backend of the histogram.
+ * Keys are ARGB colors and values are their occurrences.
+ * Open addressing with linear probing is used, so there is no boxing and no allocation per entry
+ */
+public class ColorCountTable implements ColorCounter {
+    private static final int DEFAULT_CAPACITY = 1024;
+    //Table is doubled as soon as the amount of entries exceeds this share of its capacity
+    private static final float LOAD_FACTOR = 0.5F;
+
+    //Keys (colors) array
+    private int[] mKeys;
+    //Values (counts) array, zero count marks an empty slot
+    private int[] mCounts;
+    private int mMask;
+    private int mResizeThreshold;
+    //Amount of unique colors in the table
+    private int mSize = 0;
+
+    public ColorCountTable(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize amount of unique colors expected, used to avoid rehashing
+     */
+    public ColorCountTable(int expectedSize){
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Increments the count of the color by one
+     * @param color
+     */
+    @Override
+    public void increment(int color){
+        int slot = hash(color) & mMask;
+        while (mCounts[slot] != 0) {
+            if (mKeys[slot] == color) {
+                mCounts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        insert(slot, color, 1);
+    }
+
+    /**
+     * Counts colors of the array, runs of equal neighbouring colors are counted with a single lookup
+     * @param colors
+     * @param offset
+     * @param length
+     */
+    @Override
+    public void incrementAll(@NonNull int[] colors, int offset, int length){
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int color = colors[i];
+            int runEnd = i + 1;
+            while (runEnd < end && colors[runEnd] == color)
+                runEnd++;
+            if(runEnd - i == 1)
+                increment(color);
+            else
+                add(color, runEnd - i);
+            i = runEnd;
+        }
+    }
+
+    /**
+     * Adds count to the color entry
+     * @param color
+     * @param count must be positive
+     */
+    @Override
+    public void add(int color, int count){
+        int slot = hash(color) & mMask;
+        while (mCounts[slot] != 0) {
+            if (mKeys[slot] == color) {
+                mCounts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        insert(slot, color, count);
+    }
+
+    @Override
+    public void addAll(@NonNull ColorCounter other){
+        other.forEach(new EntryVisitor() {
+            @Override
+            public void visit(int color, int count) {
+                add(color, count);
+            }
+        });
+    }
+
+    /**
+     * @param color
+     * @return count of the color, 0 if color is absent
+     */
+    public int get(int color){
+        int slot = hash(color) & mMask;
+        while (mCounts[slot] != 0) {
+            if (mKeys[slot] == color)
+                return mCounts[slot];
+            slot = (slot + 1) & mMask;
+        }
+        return 0;
+    }
+
+    /**
+     * @return amount of unique colors
+     */
+    @Override
+    public int size(){
+        return mSize;
+    }
+
+    /**
+     * Removes all entries keeping allocated capacity for further reuse
+     */
+    @Override
+    public void clear(){
+        Arrays.fill(mCounts, 0);
+        mSize = 0;
+    }
+
+    /**
+     * Iterates over all the entries of the table, the order is unspecified
+     * @param visitor
+     */
+    @Override
+    public void forEach(@NonNull EntryVisitor visitor){
+        for(int i = 0; i < mCounts.length; i++)
+            if(mCounts[i] != 0)
+                visitor.visit(mKeys[i], mCounts[i]);
+    }
+
+    private void insert(int slot, int color, int count){
+        mKeys[slot] = color;
+        mCounts[slot] = count;
+        if(++mSize > mResizeThreshold)
+            resize(mKeys.length * 2);
+    }
+
+    private void resize(int capacity){
+        int[] keys = mKeys;
+        int[] counts = mCounts;
+        allocate(capacity);
+        for(int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0)
+                continue;
+            int slot = hash(keys[i]) & mMask;
+            while (mCounts[slot] != 0)
+                slot = (slot + 1) & mMask;
+            mKeys[slot] = keys[i];
+            mCounts[slot] = counts[i];
+        }
+    }
+
+    private void allocate(int capacity){
+        mKeys = new int[capacity];
+        mCounts = new int[capacity];
+        mMask = capacity - 1;
+        mResizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // Helper function to calculate power of 2 capacity that holds expected size under load factor
+    private static int capacityFor(int expectedSize){
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    // Neighbouring colors differ in low bits only, so the key is scrambled before masking
+    private static int hash(int color){
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
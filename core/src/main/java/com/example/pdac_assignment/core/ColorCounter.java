@@ -0,0 +1,56 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counting backend of the histogram, accumulates occurrences of ARGB colors
+ */
+public interface ColorCounter {
+    // Visitor interface for counter entries iteration
+    interface EntryVisitor{
+        void visit(int color, int count);
+    }
+
+    /**
+     * Increments the count of the color by one
+     * @param color
+     */
+    void increment(int color);
+
+    /**
+     * Counts all the colors of the array
+     * @param colors
+     * @param offset
+     * @param length
+     */
+    void incrementAll(@NonNull int[] colors, int offset, int length);
+
+    /**
+     * Adds count to the color entry
+     * @param color
+     * @param count must be positive
+     */
+    void add(int color, int count);
+
+    /**
+     * Adds all the counts of other counter (merging)
+     * @param other
+     */
+    void addAll(@NonNull ColorCounter other);
+
+    /**
+     * @return amount of unique (counted) entries
+     */
+    int size();
+
+    /**
+     * Removes all entries keeping allocated memory for further reuse
+     */
+    void clear();
+
+    /**
+     * Iterates over all the entries of the counter, the order is unspecified
+     * @param visitor
+     */
+    void forEach(@NonNull EntryVisitor visitor);
+}
@@ -0,0 +1,132 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Entry point of the counting core: counts pixel sources into color counters and selects the most popular colors.
+ * Has no platform dependencies, so it is unit tested and benchmarked on a plain JVM
+ */
+public final class ColorCounting {
+    //Per thread dense bins counter for quantized counting, reused across frames
+    private static final ThreadLocal<QuantizedColorCounter> sQuantizedCounter = new ThreadLocal<>();
+    //Per thread octree counter, reused across frames
+    private static final ThreadLocal<OctreeColorCounter> sOctreeCounter = new ThreadLocal<>();
+    //Per thread perceptual bins counter, reused across frames
+    private static final ThreadLocal<ColorSpaceColorCounter> sColorSpaceCounter = new ThreadLocal<>();
+    //Per thread grid counter, reused across frames
+    private static final ThreadLocal<GridColorCounter> sGridCounter = new ThreadLocal<>();
+
+    private ColorCounting(){
+    }
+
+    /**
+     * Returns empty counting backend, quantized counter is the current thread
+     * preallocated one and is reused across frames (see compact)
+     * @param quantization null for exact colors
+     * @return
+     */
+    public static ColorCounter obtainCounter(Quantization quantization){
+        if(quantization == null)
+            return new ColorCountTable();
+        QuantizedColorCounter counter = sQuantizedCounter.get();
+        if(counter == null || counter.getQuantization() != quantization) {
+            counter = new QuantizedColorCounter(quantization);
+            sQuantizedCounter.set(counter);
+        }else
+            counter.clear();
+        return counter;
+    }
+
+    /**
+     * Returns empty octree counting backend, the counter is the current thread preallocated one
+     * and is reused across frames (see compact)
+     * @param maxColors leaves budget
+     * @return
+     */
+    public static ColorCounter obtainOctreeCounter(int maxColors){
+        OctreeColorCounter counter = sOctreeCounter.get();
+        if(counter == null || counter.getMaxLeaves() != maxColors) {
+            counter = new OctreeColorCounter(maxColors);
+            sOctreeCounter.set(counter);
+        }else
+            counter.clear();
+        return counter;
+    }
+
+    /**
+     * Returns empty perceptual bins counter, the counter is the current thread preallocated one
+     * and is reused across frames (see compact)
+     * @param colorSpace
+     * @return
+     */
+    public static ColorCounter obtainColorSpaceCounter(@NonNull ColorSpace colorSpace){
+        ColorSpaceColorCounter counter = sColorSpaceCounter.get();
+        if(counter == null || counter.getColorSpace() != colorSpace) {
+            counter = new ColorSpaceColorCounter(colorSpace);
+            sColorSpaceCounter.set(counter);
+        }else
+            counter.clear();
+        return counter;
+    }
+
+    /**
+     * Returns empty grid counter, the counter is the current thread preallocated one
+     * and is reused across frames (tiles are compacted by compact)
+     * @param columns
+     * @param rows
+     * @param quantization
+     * @return
+     */
+    public static GridColorCounter obtainGridCounter(int columns, int rows, @NonNull Quantization quantization){
+        GridColorCounter counter = sGridCounter.get();
+        if(counter == null || counter.getColumns() != columns || counter.getRows() != rows || counter.getQuantization() != quantization) {
+            counter = new GridColorCounter(columns, rows, quantization);
+            sGridCounter.set(counter);
+        }else
+            counter.clear();
+        return counter;
+    }
+
+    /**
+     * Returns counter that can be held after the next obtainCounter call,
+     * reusable dense, perceptual and octree counters are compacted into a table
+     * @param counter
+     * @return
+     */
+    public static ColorCounter compact(@NonNull ColorCounter counter){
+        if(counter instanceof QuantizedColorCounter)
+            return ((QuantizedColorCounter) counter).toTable();
+        if(counter instanceof OctreeColorCounter)
+            return ((OctreeColorCounter) counter).toTable();
+        if(counter instanceof ColorSpaceColorCounter)
+            return ((ColorSpaceColorCounter) counter).toTable();
+        return counter;
+    }
+
+    /**
+     * Counts all the rows of pixel source, sequentially or in parallel
+     * @param rows
+     * @param parallelism amount of counting threads, 1 for sequential counting
+     * @param quantization quantization of parallel workers counters, null for exact colors,
+     *                     workers of perceptual bins counter bin by its color space instead
+     * @param counter
+     */
+    public static void count(@NonNull PixelRows rows, int parallelism, Quantization quantization, @NonNull ColorCounter counter){
+        if(parallelism > 1 && rows.getRowsCount() > 1)
+            ParallelCounting.count(rows, parallelism, quantization, counter);
+        else
+            rows.countRows(0, rows.getRowsCount(), counter);
+    }
+
+    /**
+     * Selects k most popular colors
+     * @param counter
+     * @param k
+     * @return packed entries (see TopColorsHeap) ordered from the most popular color
+     */
+    public static long[] topColors(@NonNull ColorCounter counter, int k){
+        TopColorsHeap heap = new TopColorsHeap(k);
+        counter.forEach(heap);
+        return heap.toSortedArray();
+    }
+}
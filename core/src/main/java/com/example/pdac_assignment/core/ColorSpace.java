@@ -0,0 +1,136 @@
+package com.example.pdac_assignment.core;
+
+/**
+ * Perceptual binning modes, pixels are binned by their HSV or CIELAB coordinates instead of RGB bits.
+ * Colors are mapped through a 32x32x32 lookup table indexed by channels 5 high bits,
+ * so floating point conversion runs once per table cell instead of once per pixel
+ */
+public enum ColorSpace {
+    //Hue sectors, saturation levels, value levels
+    HSV(18, 4, 4),
+    //Lightness levels, a levels, b levels
+    LAB(10, 14, 14);
+
+    //Lookup table cells, 5 high bits of every channel
+    private static final int TABLE_CELLS = 1 << 15;
+    //a and b axes are binned within -LAB_AXIS_RANGE..LAB_AXIS_RANGE, which holds the sRGB gamut
+    private static final float LAB_AXIS_RANGE = 112;
+
+    //Levels of the three axes of the space, bin index is axes levels in mixed radix
+    public final int firstLevels;
+    public final int secondLevels;
+    public final int thirdLevels;
+    //Bin per table cell, built on first use
+    private volatile short[] mTable = null;
+
+    ColorSpace(int firstLevels, int secondLevels, int thirdLevels) {
+        this.firstLevels = firstLevels;
+        this.secondLevels = secondLevels;
+        this.thirdLevels = thirdLevels;
+    }
+
+    public int getBinsCount(){
+        return firstLevels * secondLevels * thirdLevels;
+    }
+
+    /**
+     * @param color ARGB color
+     * @return bin index of the color
+     */
+    public int binOf(int color){
+        return getTable()[cellOf(color)];
+    }
+
+    /**
+     * @param color ARGB color
+     * @return lookup table cell of the color, concatenation of channels 5 high bits
+     */
+    public static int cellOf(int color){
+        return ((color >>> 9) & 0x7c00) | ((color >>> 6) & 0x3e0) | ((color >>> 3) & 0x1f);
+    }
+
+    /**
+     * Returns lookup table of bins indexed by cellOf, the table is built once and shared
+     * @return
+     */
+    public short[] getTable(){
+        short[] table = mTable;
+        if(table == null) {
+            synchronized (this) {
+                table = mTable;
+                if(table == null) {
+                    table = buildTable();
+                    mTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    // Helper function, bins the center color of every table cell
+    private short[] buildTable(){
+        short[] table = new short[TABLE_CELLS];
+        for(int cell = 0; cell < TABLE_CELLS; cell++) {
+            //Cell center, the dropped 3 low bits are 4
+            int r = ((cell >>> 10) << 3) | 4;
+            int g = (((cell >>> 5) & 0x1f) << 3) | 4;
+            int b = ((cell & 0x1f) << 3) | 4;
+            table[cell] = (short) (this == HSV ? hsvBinOf(r, g, b) : labBinOf(r, g, b));
+        }
+        return table;
+    }
+
+    // Helper function, mixed radix bin index of axes levels
+    private int binOf(int first, int second, int third){
+        return (first * secondLevels + second) * thirdLevels + third;
+    }
+
+    private int hsvBinOf(int r, int g, int b){
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        int value = levelOf(max / 255F, thirdLevels);
+        int saturation = max == 0 ? 0 : levelOf((max - min) / (float) max, secondLevels);
+        //Hue of grays (and of the darkest colors) is meaningless, they share the hue 0 bins
+        if(saturation == 0 || value == 0)
+            return binOf(0, saturation, value);
+        float hue;
+        float delta = max - min;
+        if(max == r)
+            hue = (g - b) / delta;
+        else if(max == g)
+            hue = 2 + (b - r) / delta;
+        else
+            hue = 4 + (r - g) / delta;
+        if(hue < 0)
+            hue += 6;
+        return binOf(levelOf(hue / 6, firstLevels), saturation, value);
+    }
+
+    private int labBinOf(int r, int g, int b){
+        float lr = linearOf(r);
+        float lg = linearOf(g);
+        float lb = linearOf(b);
+        //sRGB to XYZ relative to D65 white
+        float x = labCurveOf((0.4124F * lr + 0.3576F * lg + 0.1805F * lb) / 0.95047F);
+        float y = labCurveOf(0.2126F * lr + 0.7152F * lg + 0.0722F * lb);
+        float z = labCurveOf((0.0193F * lr + 0.1192F * lg + 0.9505F * lb) / 1.08883F);
+        int lightness = levelOf((116 * y - 16) / 100, firstLevels);
+        int a = levelOf((500 * (x - y) + LAB_AXIS_RANGE) / (2 * LAB_AXIS_RANGE), secondLevels);
+        int bb = levelOf((200 * (y - z) + LAB_AXIS_RANGE) / (2 * LAB_AXIS_RANGE), thirdLevels);
+        return binOf(lightness, a, bb);
+    }
+
+    private static float linearOf(int channel){
+        float c = channel / 255F;
+        return c <= 0.04045F ? c / 12.92F : (float) Math.pow((c + 0.055F) / 1.055F, 2.4);
+    }
+
+    private static float labCurveOf(float t){
+        return t > 0.008856F ? (float) Math.cbrt(t) : 7.787F * t + 16F / 116;
+    }
+
+    // Helper function, level of 0..1 value clamped to levels - 1
+    private static int levelOf(float value, int levels){
+        return Math.max(0, Math.min(levels - 1, (int) (value * levels)));
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Counting backend that bins colors perceptually (see ColorSpace) through a precomputed lookup table
+ * and counts them in dense preallocated arrays. Channels sums are accumulated per bin,
+ * so reported colors are bins centroids (mean colors of the binned pixels) rather than fixed bins colors
+ */
+public class ColorSpaceColorCounter implements ColorCounter {
+    private final ColorSpace mColorSpace;
+    //Bin per lookup table cell (see ColorSpace.cellOf)
+    private final short[] mTable;
+    //Occurrences per bin
+    private final int[] mCounts;
+    //Red, green and blue sums per bin, interleaved
+    private final long[] mSums;
+
+    public ColorSpaceColorCounter(@NonNull ColorSpace colorSpace){
+        mColorSpace = colorSpace;
+        mTable = colorSpace.getTable();
+        mCounts = new int[colorSpace.getBinsCount()];
+        mSums = new long[colorSpace.getBinsCount() * 3];
+    }
+
+    public ColorSpace getColorSpace(){
+        return mColorSpace;
+    }
+
+    @Override
+    public void increment(int color) {
+        add(color, 1);
+    }
+
+    @Override
+    public void incrementAll(@NonNull int[] colors, int offset, int length) {
+        short[] table = mTable;
+        int[] counts = mCounts;
+        long[] sums = mSums;
+        for(int i = offset, end = offset + length; i < end; i++) {
+            int color = colors[i];
+            int bin = table[ColorSpace.cellOf(color)];
+            counts[bin]++;
+            int sum = bin * 3;
+            sums[sum] += (color >>> 16) & 0xff;
+            sums[sum + 1] += (color >>> 8) & 0xff;
+            sums[sum + 2] += color & 0xff;
+        }
+    }
+
+    @Override
+    public void add(int color, int count) {
+        int bin = mTable[ColorSpace.cellOf(color)];
+        mCounts[bin] += count;
+        int sum = bin * 3;
+        mSums[sum] += (long) ((color >>> 16) & 0xff) * count;
+        mSums[sum + 1] += (long) ((color >>> 8) & 0xff) * count;
+        mSums[sum + 2] += (long) (color & 0xff) * count;
+    }
+
+    /**
+     * Adds other counter counts, bins (and sums) of counter with the same color space are summed directly
+     * @param other
+     */
+    @Override
+    public void addAll(@NonNull ColorCounter other) {
+        if(other instanceof ColorSpaceColorCounter && ((ColorSpaceColorCounter) other).mColorSpace == mColorSpace) {
+            ColorSpaceColorCounter counter = (ColorSpaceColorCounter) other;
+            for(int bin = 0; bin < mCounts.length; bin++)
+                mCounts[bin] += counter.mCounts[bin];
+            for(int sum = 0; sum < mSums.length; sum++)
+                mSums[sum] += counter.mSums[sum];
+            return;
+        }
+        other.forEach(new EntryVisitor() {
+            @Override
+            public void visit(int color, int count) {
+                add(color, count);
+            }
+        });
+    }
+
+    /**
+     * @return amount of non empty bins
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (int count : mCounts)
+            if (count != 0)
+                size++;
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(mCounts, 0);
+        Arrays.fill(mSums, 0);
+    }
+
+    /**
+     * Iterates over non empty bins, reported color is the bin centroid
+     * @param visitor
+     */
+    @Override
+    public void forEach(@NonNull EntryVisitor visitor) {
+        for(int bin = 0; bin < mCounts.length; bin++)
+            if(mCounts[bin] != 0)
+                visitor.visit(centroidOf(bin), mCounts[bin]);
+    }
+
+    /**
+     * @param bin
+     * @return opaque mean color of the bin pixels, black for an empty bin
+     */
+    public int centroidOf(int bin){
+        int count = mCounts[bin];
+        if(count == 0)
+            return 0xff000000;
+        int sum = bin * 3;
+        int r = (int) ((mSums[sum] + count / 2) / count);
+        int g = (int) ((mSums[sum + 1] + count / 2) / count);
+        int b = (int) ((mSums[sum + 2] + count / 2) / count);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Copies non empty bins centroids into a compact table, so the dense arrays can be reused for the next frame.
+     * Centroids of two bins may round to the same color, their counts are merged then
+     * @return
+     */
+    public ColorCountTable toTable(){
+        final ColorCountTable table = new ColorCountTable(size());
+        forEach(new EntryVisitor() {
+            @Override
+            public void visit(int color, int count) {
+                table.add(color, count);
+            }
+        });
+        return table;
+    }
+}
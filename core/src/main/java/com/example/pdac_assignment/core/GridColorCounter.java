@@ -0,0 +1,130 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Per tile color counts of a columns x rows grid laid over an image (or its rectangle).
+ * All the tiles are filled during a single traversal of the pixel source: every row is read once
+ * and its spans are counted into the counters of the tiles they fall into.
+ * Tiles are counted into dense quantized bins, so memory is bounded by tiles by bins regardless of the image
+ */
+public class GridColorCounter {
+    private final int mColumns;
+    private final int mRows;
+    private final Quantization mQuantization;
+    //Tile counters, row by row
+    private final QuantizedColorCounter[] mTiles;
+    //Amount of counted pixels of every tile
+    private final int[] mTilePixels;
+
+    /**
+     * @param columns
+     * @param rows
+     * @param quantization
+     * @throws IllegalArgumentException
+     */
+    public GridColorCounter(int columns, int rows, @NonNull Quantization quantization) throws IllegalArgumentException{
+        if(columns < 1 || rows < 1)
+            throw new IllegalArgumentException("Invalid grid " + columns + "x" + rows);
+        mColumns = columns;
+        mRows = rows;
+        mQuantization = quantization;
+        mTiles = new QuantizedColorCounter[columns * rows];
+        for(int i = 0; i < mTiles.length; i++)
+            mTiles[i] = new QuantizedColorCounter(quantization);
+        mTilePixels = new int[columns * rows];
+    }
+
+    public int getColumns(){
+        return mColumns;
+    }
+
+    public int getRows(){
+        return mRows;
+    }
+
+    public Quantization getQuantization(){
+        return mQuantization;
+    }
+
+    /**
+     * Counts every step-th pixel of every step-th row of the whole source
+     * @param source
+     * @param step
+     */
+    public void count(@NonNull PixelSpans source, int step){
+        count(source, 0, 0, source.getWidth(), source.getHeight(), step);
+    }
+
+    /**
+     * Counts every step-th pixel of every step-th row of the rectangle, the rectangle is split into tiles evenly
+     * @param source
+     * @param left inclusive
+     * @param top inclusive
+     * @param right exclusive
+     * @param bottom exclusive
+     * @param step subsampling step
+     * @throws IllegalArgumentException
+     */
+    public void count(@NonNull PixelSpans source, int left, int top, int right, int bottom, int step) throws IllegalArgumentException{
+        if(left < 0 || top < 0 || right > source.getWidth() || bottom > source.getHeight() || left >= right || top >= bottom)
+            throw new IllegalArgumentException("Invalid rectangle [" + left + ", " + top + ", " + right + ", " + bottom + "] of "
+                    + source.getWidth() + "x" + source.getHeight());
+        if(step < 1)
+            throw new IllegalArgumentException("Invalid step " + step);
+        int width = right - left;
+        int height = bottom - top;
+        //Columns bounds, the first counted pixel of every column is aligned to the step
+        int[] fromX = new int[mColumns];
+        int[] toX = new int[mColumns];
+        for(int column = 0; column < mColumns; column++) {
+            int from = left + (int) ((long) column * width / mColumns);
+            fromX[column] = left + (from - left + step - 1) / step * step;
+            toX[column] = left + (int) ((long) (column + 1) * width / mColumns);
+        }
+        for(int y = top; y < bottom; y += step) {
+            int tile = (int) ((long) (y - top) * mRows / height) * mColumns;
+            for(int column = 0; column < mColumns; column++, tile++) {
+                if(fromX[column] >= toX[column])
+                    continue;
+                source.countSpan(y, fromX[column], toX[column], step, mTiles[tile]);
+                mTilePixels[tile] += (toX[column] - fromX[column] + step - 1) / step;
+            }
+        }
+    }
+
+    /**
+     * @param column
+     * @param row
+     * @return counts of the tile, the counter is reused after clear (see ColorCounting.compact)
+     */
+    public ColorCounter getTile(int column, int row){
+        return mTiles[indexOf(column, row)];
+    }
+
+    /**
+     * @param column
+     * @param row
+     * @return amount of counted pixels of the tile
+     */
+    public int getTilePixelsCount(int column, int row){
+        return mTilePixels[indexOf(column, row)];
+    }
+
+    /**
+     * Drops counts of all the tiles
+     */
+    public void clear(){
+        for(QuantizedColorCounter tile : mTiles)
+            tile.clear();
+        Arrays.fill(mTilePixels, 0);
+    }
+
+    private int indexOf(int column, int row){
+        if(column < 0 || column >= mColumns || row < 0 || row >= mRows)
+            throw new IndexOutOfBoundsException("Tile " + column + ", " + row + " of " + mColumns + "x" + mRows);
+        return row * mColumns + column;
+    }
+}
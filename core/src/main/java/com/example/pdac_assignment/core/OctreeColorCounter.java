@@ -0,0 +1,244 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Counting backend that streams pixels into a color octree (Gervautz-Purgathofer quantizer).
+ * Every level splits RGB cube by one bit of each channel, leaves hold pixels amount and channels sums.
+ * Whenever leaves amount exceeds the budget, the least populated node of the deepest level is reduced:
+ * its leaves are merged into it and the node becomes a leaf. Nodes are kept in preallocated arrays
+ * and reduced nodes are returned to a pool, so memory is fixed by the budget regardless of image size or colors cardinality.
+ * Reported colors are leaves mean colors (opaque), counts are exact pixels amounts represented by the leaves
+ */
+public class OctreeColorCounter implements ColorCounter {
+    //Depth of exact 24 bit colors leaves
+    private static final int MAX_DEPTH = 8;
+    private static final int NONE = -1;
+    private static final int ROOT = 0;
+
+    private final int mMaxLeaves;
+    //Children indices, 8 per node, 0 for missing child (root is never a child)
+    private final int[] mChildren;
+    //Pixels amount of the node subtree
+    private final int[] mCounts;
+    //Channels sums of leaves
+    private final long[] mRedSums;
+    private final long[] mGreenSums;
+    private final long[] mBlueSums;
+    private final boolean[] mLeaves;
+    //Next node of the level list of reducible nodes, or next node of the pool
+    private final int[] mNext;
+    //Reducible (internal) nodes lists per level
+    private final int[] mLevelHeads = new int[MAX_DEPTH];
+    private int mPoolHead = NONE;
+    //Amount of nodes that have ever been allocated from the arrays
+    private int mNodesCount;
+    private int mLeavesCount;
+    //New colors become leaves at this depth, it decreases as deeper levels are reduced
+    private int mLeafDepth;
+
+    /**
+     * @param maxLeaves leaves budget, maximum amount of reported colors
+     */
+    public OctreeColorCounter(int maxLeaves){
+        if(maxLeaves < 1)
+            throw new IllegalArgumentException("Leaves budget must be positive: " + maxLeaves);
+        mMaxLeaves = maxLeaves;
+        //Budget overflows by a single insertion, which creates at most MAX_DEPTH nodes, every leaf has at most MAX_DEPTH ancestors
+        int capacity = (maxLeaves + 1) * (MAX_DEPTH + 1) + 1;
+        mChildren = new int[capacity * 8];
+        mCounts = new int[capacity];
+        mRedSums = new long[capacity];
+        mGreenSums = new long[capacity];
+        mBlueSums = new long[capacity];
+        mLeaves = new boolean[capacity];
+        mNext = new int[capacity];
+        clear();
+    }
+
+    public int getMaxLeaves(){
+        return mMaxLeaves;
+    }
+
+    @Override
+    public void increment(int color) {
+        add(color, 1);
+    }
+
+    @Override
+    public void incrementAll(@NonNull int[] colors, int offset, int length) {
+        int previous = 0;
+        int run = 0;
+        //Runs of the same color (flat areas) are inserted at once
+        for(int i = offset, end = offset + length; i < end; i++) {
+            int color = colors[i];
+            if(run > 0 && color == previous) {
+                run++;
+                continue;
+            }
+            if(run > 0)
+                add(previous, run);
+            previous = color;
+            run = 1;
+        }
+        if(run > 0)
+            add(previous, run);
+    }
+
+    @Override
+    public void add(int color, int count) {
+        int r = (color >> 16) & 0xff;
+        int g = (color >> 8) & 0xff;
+        int b = color & 0xff;
+        int node = ROOT;
+        int depth = 0;
+        mCounts[node] += count;
+        while (!mLeaves[node]) {
+            int shift = 7 - depth;
+            int slot = node * 8 + ((((r >> shift) & 1) << 2) | (((g >> shift) & 1) << 1) | ((b >> shift) & 1));
+            int child = mChildren[slot];
+            depth++;
+            if(child == 0) {
+                child = allocate(depth);
+                mChildren[slot] = child;
+            }
+            node = child;
+            mCounts[node] += count;
+        }
+        mRedSums[node] += (long) r * count;
+        mGreenSums[node] += (long) g * count;
+        mBlueSums[node] += (long) b * count;
+        while (mLeavesCount > mMaxLeaves)
+            reduce();
+    }
+
+    @Override
+    public void addAll(@NonNull ColorCounter other) {
+        other.forEach(new EntryVisitor() {
+            @Override
+            public void visit(int color, int count) {
+                add(color, count);
+            }
+        });
+    }
+
+    /**
+     * @return amount of leaves
+     */
+    @Override
+    public int size() {
+        return mLeavesCount;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(mChildren, 0, Math.max(mNodesCount, 1) * 8, 0);
+        Arrays.fill(mLevelHeads, NONE);
+        mPoolHead = NONE;
+        mNodesCount = 0;
+        mLeavesCount = 0;
+        mLeafDepth = MAX_DEPTH;
+        allocate(0);
+    }
+
+    /**
+     * Iterates over leaves, reported color is the mean color of the leaf pixels
+     * @param visitor
+     */
+    @Override
+    public void forEach(@NonNull EntryVisitor visitor) {
+        for(int node = 0; node < mNodesCount; node++) {
+            int count = mCounts[node];
+            if(!mLeaves[node] || count == 0)
+                continue;
+            visitor.visit(0xff000000
+                    | (int) ((mRedSums[node] + count / 2) / count) << 16
+                    | (int) ((mGreenSums[node] + count / 2) / count) << 8
+                    | (int) ((mBlueSums[node] + count / 2) / count), count);
+        }
+    }
+
+    /**
+     * Copies leaves into a compact table, so the nodes arrays can be reused for the next frame
+     * @return
+     */
+    public ColorCountTable toTable(){
+        final ColorCountTable table = new ColorCountTable(size());
+        forEach(new EntryVisitor() {
+            @Override
+            public void visit(int color, int count) {
+                table.add(color, count);
+            }
+        });
+        return table;
+    }
+
+    // Helper function, takes a node out of the pool (or the arrays tail) and registers it as a leaf or a reducible node
+    private int allocate(int depth){
+        int node;
+        if(mPoolHead != NONE) {
+            node = mPoolHead;
+            mPoolHead = mNext[node];
+        }else
+            node = mNodesCount++;
+        mCounts[node] = 0;
+        mRedSums[node] = 0;
+        mGreenSums[node] = 0;
+        mBlueSums[node] = 0;
+        mLeaves[node] = depth >= mLeafDepth;
+        if(mLeaves[node]) {
+            mLeavesCount++;
+            mNext[node] = NONE;
+        }else {
+            mNext[node] = mLevelHeads[depth];
+            mLevelHeads[depth] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Merges leaves of the least populated node of the deepest reducible level into it
+     */
+    private void reduce(){
+        int level = mLeafDepth - 1;
+        while (mLevelHeads[level] == NONE)
+            level--;
+        int previous = NONE;
+        int minPrevious = NONE;
+        int min = mLevelHeads[level];
+        for(int node = min; node != NONE; previous = node, node = mNext[node])
+            if(mCounts[node] < mCounts[min]) {
+                min = node;
+                minPrevious = previous;
+            }
+        if(minPrevious == NONE)
+            mLevelHeads[level] = mNext[min];
+        else
+            mNext[minPrevious] = mNext[min];
+
+        long red = 0, green = 0, blue = 0;
+        for(int slot = min * 8, end = slot + 8; slot < end; slot++) {
+            int child = mChildren[slot];
+            if(child == 0)
+                continue;
+            red += mRedSums[child];
+            green += mGreenSums[child];
+            blue += mBlueSums[child];
+            mLeaves[child] = false;
+            mCounts[child] = 0;
+            mNext[child] = mPoolHead;
+            mPoolHead = child;
+            mChildren[slot] = 0;
+            mLeavesCount--;
+        }
+        mRedSums[min] = red;
+        mGreenSums[min] = green;
+        mBlueSums[min] = blue;
+        mLeaves[min] = true;
+        mLeavesCount++;
+        //Nothing deeper than the reduced level children is left
+        mLeafDepth = level + 1;
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Palette extraction: K representative colors of an image with their population.
+ * Counted colors are reduced to a coarse RGB555 histogram, the histogram is split by median cut
+ * and the boxes means are optionally refined by a few k-means iterations.
+ * Similar shades of one surface fall into a single palette color instead of occupying several top colors.
+ * Work is bounded: median cut is linear in the amount of non empty bins per split
+ * and k-means is capped by iterations amount and time budget
+ */
+public final class PaletteExtraction {
+    private static final Quantization COARSE = Quantization.RGB555;
+    //Per thread coarse histogram, reused across frames
+    private static final ThreadLocal<int[]> sCoarseCounts = new ThreadLocal<>();
+    //K-means time budget is checked every this many reassigned bins
+    private static final int DEADLINE_CHECK_BINS = 256;
+    //Reassignment outcomes
+    private static final int REASSIGN_STABLE = 0;
+    private static final int REASSIGN_CHANGED = 1;
+    private static final int REASSIGN_TIMED_OUT = 2;
+
+    private PaletteExtraction(){
+    }
+
+    /**
+     * Extracts the palette of counted colors
+     * @param counter counted colors (exact or quantized)
+     * @param colors palette size
+     * @param maxIterations k-means iterations cap, 0 for median cut only
+     * @param maxNanos k-means time budget, an iteration that exceeds it is abandoned and the previous means are kept
+     * @return packed entries (see TopColorsHeap) of palette colors and their pixels amount, ordered from the most popular one
+     */
+    public static long[] extract(@NonNull ColorCounter counter, int colors, int maxIterations, long maxNanos){
+        if(colors < 1)
+            throw new IllegalArgumentException("Palette must have at least one color: " + colors);
+        long start = System.nanoTime();
+        Bins bins = coarseBins(counter);
+        if(bins.size == 0)
+            return new long[0];
+        int[] boxes = medianCut(bins, colors);
+        int boxesCount = boxes.length - 1;
+        //Palette colors as population weighted means of their bins
+        double[] means = new double[boxesCount * 3];
+        long[] populations = new long[boxesCount];
+        int[] assignment = new int[bins.size];
+        for(int box = 0; box < boxesCount; box++)
+            for(int i = boxes[box]; i < boxes[box + 1]; i++)
+                assignment[bins.order[i]] = box;
+        accumulateMeans(bins, assignment, means, populations);
+        long deadline = start + maxNanos;
+        for(int iteration = 0; iteration < maxIterations; iteration++) {
+            //Means and populations are only updated by a completed reassignment
+            if(reassign(bins, means, populations, assignment, deadline) != REASSIGN_CHANGED)
+                break;
+            accumulateMeans(bins, assignment, means, populations);
+        }
+
+        long[] entries = new long[boxesCount];
+        int n = 0;
+        for(int box = 0; box < boxesCount; box++) {
+            if(populations[box] == 0)
+                continue;
+            int color = 0xff000000
+                    | ((int) Math.round(means[box * 3]) << 16)
+                    | ((int) Math.round(means[box * 3 + 1]) << 8)
+                    | (int) Math.round(means[box * 3 + 2]);
+            entries[n++] = TopColorsHeap.pack(color, (int) populations[box]);
+        }
+        entries = Arrays.copyOf(entries, n);
+        Arrays.sort(entries);
+        TopColorsHeap.reverse(entries);
+        return entries;
+    }
+
+    // Non empty coarse bins with their channels and pixels amount
+    private static class Bins{
+        int size;
+        int[] red;
+        int[] green;
+        int[] blue;
+        int[] counts;
+        //Bins indexes in median cut boxes order
+        int[] order;
+
+        int channel(int channel, int bin){
+            return channel == 0 ? red[bin] : (channel == 1 ? green[bin] : blue[bin]);
+        }
+    }
+
+    // Helper function, counted colors are reduced to coarse histogram bins
+    private static Bins coarseBins(ColorCounter counter){
+        int[] counts = sCoarseCounts.get();
+        if(counts == null) {
+            counts = new int[COARSE.getBinsCount()];
+            sCoarseCounts.set(counts);
+        }
+        final int[] coarse = counts;
+        counter.forEach(new ColorCounter.EntryVisitor() {
+            @Override
+            public void visit(int color, int count) {
+                coarse[COARSE.binOf(color)] += count;
+            }
+        });
+        Bins bins = new Bins();
+        for(int count : coarse)
+            if(count != 0)
+                bins.size++;
+        bins.red = new int[bins.size];
+        bins.green = new int[bins.size];
+        bins.blue = new int[bins.size];
+        bins.counts = new int[bins.size];
+        bins.order = new int[bins.size];
+        int n = 0;
+        for(int bin = 0; bin < coarse.length; bin++) {
+            if(coarse[bin] == 0)
+                continue;
+            int color = COARSE.colorOf(bin);
+            bins.red[n] = (color >> 16) & 0xff;
+            bins.green[n] = (color >> 8) & 0xff;
+            bins.blue[n] = color & 0xff;
+            bins.counts[n] = coarse[bin];
+            bins.order[n] = n;
+            n++;
+            coarse[bin] = 0;
+        }
+        return bins;
+    }
+
+    /**
+     * Splits bins into boxes, the box with the largest population times channel range is split
+     * at the population median of its longest channel
+     * @param bins
+     * @param colors
+     * @return boxes bounds within bins order, box i is [bounds[i], bounds[i + 1])
+     */
+    private static int[] medianCut(Bins bins, int colors){
+        int[] bounds = new int[Math.min(colors, bins.size) + 1];
+        bounds[1] = bins.size;
+        int boxesCount = 1;
+        int[] keys = new int[bins.size];
+        while (boxesCount < bounds.length - 1) {
+            int bestBox = -1, bestChannel = 0;
+            long bestScore = 0;
+            for(int box = 0; box < boxesCount; box++) {
+                long population = 0;
+                int[] min = {255, 255, 255}, max = {0, 0, 0};
+                for(int i = bounds[box]; i < bounds[box + 1]; i++) {
+                    int bin = bins.order[i];
+                    population += bins.counts[bin];
+                    for(int channel = 0; channel < 3; channel++) {
+                        min[channel] = Math.min(min[channel], bins.channel(channel, bin));
+                        max[channel] = Math.max(max[channel], bins.channel(channel, bin));
+                    }
+                }
+                for(int channel = 0; channel < 3; channel++) {
+                    long score = population * (max[channel] - min[channel]);
+                    if(score > bestScore) {
+                        bestScore = score;
+                        bestBox = box;
+                        bestChannel = channel;
+                    }
+                }
+            }
+            if(bestBox < 0)
+                //Every box is a single bin
+                break;
+            int split = splitBox(bins, keys, bounds[bestBox], bounds[bestBox + 1], bestChannel);
+            System.arraycopy(bounds, bestBox + 1, bounds, bestBox + 2, boxesCount - bestBox);
+            bounds[bestBox + 1] = split;
+            boxesCount++;
+        }
+        return Arrays.copyOf(bounds, boxesCount + 1);
+    }
+
+    // Helper function, orders box bins by the channel and returns the population median position
+    private static int splitBox(Bins bins, int[] keys, int from, int to, int channel){
+        long population = 0;
+        for(int i = from; i < to; i++) {
+            int bin = bins.order[i];
+            //Channel value in the high bits, bin index in the low ones
+            keys[i] = (bins.channel(channel, bin) << 16) | bin;
+            population += bins.counts[bin];
+        }
+        Arrays.sort(keys, from, to);
+        long half = population / 2, accumulated = 0;
+        int split = -1;
+        for(int i = from; i < to; i++) {
+            int bin = keys[i] & 0xffff;
+            bins.order[i] = bin;
+            accumulated += bins.counts[bin];
+            if(split < 0 && accumulated >= half)
+                split = i + 1;
+        }
+        //Both halves are non empty, the box has at least two distinct channel values
+        return Math.max(from + 1, Math.min(split, to - 1));
+    }
+
+    // Helper function, population weighted means of assigned bins
+    private static void accumulateMeans(Bins bins, int[] assignment, double[] means, long[] populations){
+        double[] sums = new double[means.length];
+        Arrays.fill(populations, 0);
+        for(int bin = 0; bin < bins.size; bin++) {
+            int box = assignment[bin];
+            int count = bins.counts[bin];
+            sums[box * 3] += (double) bins.red[bin] * count;
+            sums[box * 3 + 1] += (double) bins.green[bin] * count;
+            sums[box * 3 + 2] += (double) bins.blue[bin] * count;
+            populations[box] += count;
+        }
+        for(int box = 0; box < populations.length; box++)
+            if(populations[box] != 0)
+                for(int channel = 0; channel < 3; channel++)
+                    means[box * 3 + channel] = sums[box * 3 + channel] / populations[box];
+    }
+
+    // Helper function, k-means assignment step, returns REASSIGN_CHANGED if any bin moved to another palette color
+    // or REASSIGN_TIMED_OUT if the deadline passed before all the bins are reassigned (the assignment is partial then)
+    private static int reassign(Bins bins, double[] means, long[] populations, int[] assignment, long deadline){
+        boolean changed = false;
+        for(int bin = 0; bin < bins.size; bin++) {
+            if(bin % DEADLINE_CHECK_BINS == 0 && System.nanoTime() - deadline >= 0)
+                return REASSIGN_TIMED_OUT;
+            int nearest = assignment[bin];
+            double nearestDistance = Double.MAX_VALUE;
+            for(int box = 0; box < populations.length; box++) {
+                if(populations[box] == 0)
+                    continue;
+                double dr = bins.red[bin] - means[box * 3];
+                double dg = bins.green[bin] - means[box * 3 + 1];
+                double db = bins.blue[bin] - means[box * 3 + 2];
+                double distance = dr * dr + dg * dg + db * db;
+                if(distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = box;
+                }
+            }
+            if(nearest != assignment[bin]) {
+                assignment[bin] = nearest;
+                changed = true;
+            }
+        }
+        return changed ? REASSIGN_CHANGED : REASSIGN_STABLE;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel counting of pixel rows on a ForkJoin pool.
+ * Rows are split into tiles, every worker thread counts its tiles into its own counter
+ * and the counters are merged at the end. Counts are exact, so the result is identical to sequential counting.
+ * Worker counters are owned by the job until they are merged, so jobs may run on a shared pool at the same time
+ */
+final class ParallelCounting {
+    //Tiles are split until they hold no more than this amount of pixels
+    private static final int TILE_PIXELS = 32 * 1024;
+
+    //Pools are shared by all histograms with the same parallelism level
+    private static final HashMap<Integer, ForkJoinPool> sPools = new HashMap<>();
+    //Merged (cleared) worker counters by their kind (see Job.mCounterKind), reused by next jobs, guarded by itself
+    private static final HashMap<Object, ArrayDeque<ColorCounter>> sFreeCounters = new HashMap<>();
+    //Free counters kept per kind, enough for a couple of jobs running at once
+    private static final int MAX_FREE_COUNTERS = 2 * Runtime.getRuntime().availableProcessors();
+    //Tables that grew beyond this amount of entries (a large frame at full scale) are not kept for reuse
+    private static final int MAX_FREE_TABLE_ENTRIES = 64 * 1024;
+
+    private ParallelCounting(){
+    }
+
+    /**
+     * Counts all the rows in parallel and adds the counts to the result counter.
+     * Workers of perceptual bins result count into bins of the same color space, so bins and sums are merged directly
+     * @param rows
+     * @param parallelism
+     * @param quantization quantization of worker counters, null for exact colors, ignored for perceptual bins result
+     * @param result
+     */
+    static void count(@NonNull PixelRows rows, int parallelism, Quantization quantization, @NonNull ColorCounter result){
+        Object counterKind = result instanceof ColorSpaceColorCounter ? ((ColorSpaceColorCounter) result).getColorSpace() : quantization;
+        Job job = new Job(rows, counterKind);
+        obtainPool(parallelism).invoke(new TileTask(job, 0, rows.getRowsCount()));
+        for(ColorCounter counter : job.mCounters.values()) {
+            result.addAll(counter);
+            releaseCounter(counterKind, counter);
+        }
+    }
+
+    private static ForkJoinPool obtainPool(int parallelism){
+        synchronized (sPools) {
+            ForkJoinPool pool = sPools.get(parallelism);
+            if(pool == null) {
+                pool = new ForkJoinPool(parallelism);
+                sPools.put(parallelism, pool);
+            }
+            return pool;
+        }
+    }
+
+    // Helper function, returns empty worker counter that no other job references
+    private static ColorCounter obtainCounter(Object counterKind){
+        synchronized (sFreeCounters) {
+            ArrayDeque<ColorCounter> free = sFreeCounters.get(counterKind);
+            if(free != null && !free.isEmpty())
+                return free.pop();
+        }
+        if(counterKind == null)
+            return new ColorCountTable();
+        if(counterKind instanceof ColorSpace)
+            return new ColorSpaceColorCounter((ColorSpace) counterKind);
+        return new QuantizedColorCounter((Quantization) counterKind);
+    }
+
+    // Helper function, merged counter is cleared and handed over to next jobs unless the free list is full
+    // or the counter is a grown table, which is left to the garbage collector so its capacity is not retained
+    private static void releaseCounter(Object counterKind, ColorCounter counter){
+        if(counter instanceof ColorCountTable && counter.size() > MAX_FREE_TABLE_ENTRIES)
+            return;
+        counter.clear();
+        synchronized (sFreeCounters) {
+            ArrayDeque<ColorCounter> free = sFreeCounters.get(counterKind);
+            if(free == null) {
+                free = new ArrayDeque<>();
+                sFreeCounters.put(counterKind, free);
+            }
+            if(free.size() < MAX_FREE_COUNTERS)
+                free.push(counter);
+        }
+    }
+
+    // Single counting invocation state
+    private static class Job{
+        final PixelRows mRows;
+        //Worker counters kind: Quantization (null for exact colors) or ColorSpace
+        final Object mCounterKind;
+        final int mRowsPerTile;
+        //Counters of all the threads that took part in the job, only the owner thread puts and uses its counter
+        final ConcurrentHashMap<Thread, ColorCounter> mCounters = new ConcurrentHashMap<>();
+
+        Job(PixelRows rows, Object counterKind) {
+            mRows = rows;
+            mCounterKind = counterKind;
+            mRowsPerTile = Math.max(1, TILE_PIXELS / Math.max(1, rows.getRowWidth()));
+        }
+    }
+
+    private static class TileTask extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+
+        private final Job mJob;
+        private final int mFromRow;
+        private final int mToRow;
+
+        TileTask(Job job, int fromRow, int toRow) {
+            mJob = job;
+            mFromRow = fromRow;
+            mToRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if(mToRow - mFromRow > mJob.mRowsPerTile) {
+                int middle = (mFromRow + mToRow) >>> 1;
+                invokeAll(new TileTask(mJob, mFromRow, middle), new TileTask(mJob, middle, mToRow));
+                return;
+            }
+            mJob.mRows.countRows(mFromRow, mToRow, obtainTileCounter(mJob));
+        }
+
+        // Returns current thread counter of the job, the counter is obtained and registered on first use within the job
+        private static ColorCounter obtainTileCounter(Job job){
+            Thread thread = Thread.currentThread();
+            ColorCounter counter = job.mCounters.get(thread);
+            if(counter == null) {
+                counter = obtainCounter(job.mCounterKind);
+                job.mCounters.put(thread, counter);
+            }
+            return counter;
+        }
+    }
+}
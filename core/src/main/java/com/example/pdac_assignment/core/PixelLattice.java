@@ -0,0 +1,15 @@
+package com.example.pdac_assignment.core;
+
+/**
+ * Pixel source that can be read as a sparse lattice, used by sampled counting.
+ * Lattices of the same step with all the offsets from 0 to step - 1 cover every pixel exactly once
+ */
+public interface PixelLattice {
+    /**
+     * @param x0 column offset, 0 to step - 1
+     * @param y0 row offset, 0 to step - 1
+     * @param step
+     * @return rows of pixels (x0 + i * step, y0 + j * step)
+     */
+    PixelRows lattice(int x0, int y0, int step);
+}
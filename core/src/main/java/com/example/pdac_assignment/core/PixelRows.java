@@ -0,0 +1,33 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Pixel source of the counting core, image pixels are counted row by row.
+ * Disjoint rows ranges may be counted concurrently, so implementations keep no mutable state.
+ * Platform specific images (Bitmap, camera frames) are counted through adapters implementing this interface
+ */
+public interface PixelRows {
+    /**
+     * @return amount of rows (after subsampling, if any)
+     */
+    int getRowsCount();
+
+    /**
+     * @return amount of pixels in a row (after subsampling, if any)
+     */
+    int getRowWidth();
+
+    /**
+     * @return amount of counted pixels, rows count by row width unless rows are masked (see RegionPixelRows)
+     */
+    int getPixelsCount();
+
+    /**
+     * Counts pixels of rows range
+     * @param fromRow inclusive
+     * @param toRow exclusive
+     * @param counter
+     */
+    void countRows(int fromRow, int toRow, @NonNull ColorCounter counter);
+}
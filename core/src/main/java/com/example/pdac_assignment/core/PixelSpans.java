@@ -0,0 +1,29 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Full resolution pixel source that can be read by row spans, used to count arbitrary regions (see RegionPixelRows).
+ * Spans are read regardless of the subsampling step of the source rows
+ */
+public interface PixelSpans {
+    /**
+     * @return full resolution width
+     */
+    int getWidth();
+
+    /**
+     * @return full resolution height
+     */
+    int getHeight();
+
+    /**
+     * Counts pixels (x, y) for x = fromX + i * step below toX
+     * @param y row, 0 to height - 1
+     * @param fromX inclusive
+     * @param toX exclusive
+     * @param step
+     * @param counter
+     */
+    void countSpan(int y, int fromX, int toX, int step, @NonNull ColorCounter counter);
+}
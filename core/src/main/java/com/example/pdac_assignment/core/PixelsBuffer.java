@@ -0,0 +1,28 @@
+package com.example.pdac_assignment.core;
+
+/**
+ * Per thread scratch buffer pixel sources convert and read pixels into before counting, reused across frames
+ */
+public final class PixelsBuffer {
+    //Amount of pixels read at once, rows strip is fit into it
+    public static final int STRIP_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<int[]> sBuffer = new ThreadLocal<>();
+
+    private PixelsBuffer(){
+    }
+
+    /**
+     * Returns current thread scratch buffer, the buffer is reallocated only if it is too small
+     * @param minSize
+     * @return
+     */
+    public static int[] obtain(int minSize){
+        int[] buffer = sBuffer.get();
+        if(buffer == null || buffer.length < minSize) {
+            buffer = new int[Math.max(minSize, STRIP_SIZE)];
+            sBuffer.set(buffer);
+        }
+        return buffer;
+    }
+}
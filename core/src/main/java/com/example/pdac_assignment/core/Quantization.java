@@ -0,0 +1,84 @@
+package com.example.pdac_assignment.core;
+
+/**
+ * Quantization modes, pixel channels are reduced to their high bits before counting.
+ * Bin index is a concatenation of channels high bits
+ */
+public enum Quantization {
+    RGB444(4, 4, 4),
+    RGB555(5, 5, 5),
+    RGB565(5, 6, 5),
+    RGB666(6, 6, 6);
+
+    public final int redBits;
+    public final int greenBits;
+    public final int blueBits;
+    //Shifts of channels within the bin index
+    private final int mRedShift;
+    private final int mGreenShift;
+    //Masks of channels high bits kept in place within the color
+    private final int mRedMask;
+    private final int mGreenMask;
+    private final int mBlueMask;
+    //Shifts that move masked channels down to their place within the bin index
+    private final int mRedDownShift;
+    private final int mGreenDownShift;
+    private final int mBlueDownShift;
+
+    Quantization(int redBits, int greenBits, int blueBits) {
+        this.redBits = redBits;
+        this.greenBits = greenBits;
+        this.blueBits = blueBits;
+        mGreenShift = blueBits;
+        mRedShift = greenBits + blueBits;
+        mRedMask = ((1 << redBits) - 1) << (24 - redBits);
+        mGreenMask = ((1 << greenBits) - 1) << (16 - greenBits);
+        mBlueMask = ((1 << blueBits) - 1) << (8 - blueBits);
+        mRedDownShift = 24 - redBits - mRedShift;
+        mGreenDownShift = 16 - greenBits - mGreenShift;
+        mBlueDownShift = 8 - blueBits;
+    }
+    public int getBinsCount(){
+        return 1 << (redBits + greenBits + blueBits);
+    }
+
+    /**
+     * @param color ARGB color
+     * @return bin index of the color
+     */
+    public int binOf(int color){
+        return ((color & mRedMask) >>> mRedDownShift)
+                | ((color & mGreenMask) >>> mGreenDownShift)
+                | ((color & mBlueMask) >>> mBlueDownShift);
+    }
+
+    /**
+     * Expands bin index back to opaque ARGB color, channel bits are replicated into the low bits
+     * so the darkest and the brightest bins stay black and white
+     * @param bin
+     * @return
+     */
+    public int colorOf(int bin){
+        int r = expand(bin >>> mRedShift, redBits);
+        int g = expand(bin >>> mGreenShift, greenBits);
+        int b = expand(bin, blueBits);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * @param color ARGB color
+     * @return color of the bin the color falls into
+     */
+    public int quantize(int color){
+        return colorOf(binOf(color));
+    }
+
+    private static int expand(int value, int bits){
+        value &= (1 << bits) - 1;
+        int expanded = 0;
+        //Replicating the bits pattern downwards until the byte is filled
+        for(int shift = 8 - bits; shift > -bits; shift -= bits)
+            expanded |= shift >= 0 ? value << shift : value >>> -shift;
+        return expanded;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Counting backend that reduces colors to a fixed bins amount (see Quantization)
+ * and counts them in a dense preallocated array, there is no hashing at all.
+ * Memory is bounded by the bins amount regardless of image colors cardinality
+ */
+public class QuantizedColorCounter implements ColorCounter {
+    private final Quantization mQuantization;
+    //Occurrences per bin
+    private final int[] mCounts;
+
+    public QuantizedColorCounter(@NonNull Quantization quantization){
+        mQuantization = quantization;
+        mCounts = new int[quantization.getBinsCount()];
+    }
+
+    public Quantization getQuantization(){
+        return mQuantization;
+    }
+
+    @Override
+    public void increment(int color) {
+        mCounts[mQuantization.binOf(color)]++;
+    }
+
+    @Override
+    public void incrementAll(@NonNull int[] colors, int offset, int length) {
+        int[] counts = mCounts;
+        Quantization quantization = mQuantization;
+        for(int i = offset, end = offset + length; i < end; i++)
+            counts[quantization.binOf(colors[i])]++;
+    }
+
+    @Override
+    public void add(int color, int count) {
+        mCounts[mQuantization.binOf(color)] += count;
+    }
+
+    /**
+     * Adds other counter counts, bins of counter with the same quantization are summed directly
+     * @param other
+     */
+    @Override
+    public void addAll(@NonNull ColorCounter other) {
+        if(other instanceof QuantizedColorCounter && ((QuantizedColorCounter) other).mQuantization == mQuantization) {
+            int[] counts = ((QuantizedColorCounter) other).mCounts;
+            for(int bin = 0; bin < counts.length; bin++)
+                mCounts[bin] += counts[bin];
+            return;
+        }
+        other.forEach(new EntryVisitor() {
+            @Override
+            public void visit(int color, int count) {
+                add(color, count);
+            }
+        });
+    }
+
+    /**
+     * @return amount of non empty bins
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (int count : mCounts)
+            if (count != 0)
+                size++;
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(mCounts, 0);
+    }
+
+    /**
+     * Iterates over non empty bins, reported color is the expanded bin color
+     * @param visitor
+     */
+    @Override
+    public void forEach(@NonNull EntryVisitor visitor) {
+        for(int bin = 0; bin < mCounts.length; bin++)
+            if(mCounts[bin] != 0)
+                visitor.visit(mQuantization.colorOf(bin), mCounts[bin]);
+    }
+
+    /**
+     * Copies non empty bins into a compact table, so the dense array can be reused for the next frame
+     * @return
+     */
+    public ColorCountTable toTable(){
+        final ColorCountTable table = new ColorCountTable(size());
+        forEach(new EntryVisitor() {
+            @Override
+            public void visit(int color, int count) {
+                table.add(color, count);
+            }
+        });
+        return table;
+    }
+}
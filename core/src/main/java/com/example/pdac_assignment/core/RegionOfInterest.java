@@ -0,0 +1,42 @@
+package com.example.pdac_assignment.core;
+
+/**
+ * Region of interest relative to the image size (0..1), so a single region fits frames of any resolution.
+ * Resolved to pixels of a particular image by boundsOf
+ */
+public final class RegionOfInterest {
+    public final float left;
+    public final float top;
+    public final float right;
+    public final float bottom;
+
+    /**
+     * @param left
+     * @param top
+     * @param right must be greater than left
+     * @param bottom must be greater than top
+     * @throws IllegalArgumentException region is empty or out of 0..1
+     */
+    public RegionOfInterest(float left, float top, float right, float bottom) throws IllegalArgumentException{
+        if(!(left >= 0 && left < right && right <= 1 && top >= 0 && top < bottom && bottom <= 1))
+            throw new IllegalArgumentException("Invalid region of interest [" + left + ", " + top + ", " + right + ", " + bottom + "]");
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * Resolves the region to pixels of width x height image, rounded outwards to at least a pixel
+     * @param width
+     * @param height
+     * @return left, top, right and bottom bounds, right and bottom are exclusive
+     */
+    public int[] boundsOf(int width, int height){
+        int left = Math.min(width - 1, (int) Math.floor(this.left * width));
+        int top = Math.min(height - 1, (int) Math.floor(this.top * height));
+        int right = Math.max(left + 1, Math.min(width, (int) Math.ceil(this.right * width)));
+        int bottom = Math.max(top + 1, Math.min(height, (int) Math.ceil(this.bottom * height)));
+        return new int[]{left, top, right, bottom};
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Rows of a region of interest of a pixel source: a rectangle, or an ellipse inscribed into it
+ * (center weighted mask, corners of the rectangle are not counted).
+ * Every step-th pixel of every step-th row of the rectangle is read, pixels outside of the region are never read,
+ * so the counting cost is proportional to the region area
+ */
+public class RegionPixelRows implements PixelRows, PixelLattice {
+    private final PixelSpans mSource;
+    //Region rectangle, right and bottom are exclusive
+    private final int mLeft;
+    private final int mTop;
+    private final int mRight;
+    private final int mBottom;
+    private final boolean mElliptical;
+    private final int mStep;
+    //Offsets of the first counted pixel relative to the region rectangle
+    private final int mX0;
+    private final int mY0;
+
+    /**
+     * @param source
+     * @param left inclusive
+     * @param top inclusive
+     * @param right exclusive
+     * @param bottom exclusive
+     * @param elliptical count only the ellipse inscribed into the rectangle
+     * @param step subsampling step
+     * @throws IllegalArgumentException
+     */
+    public RegionPixelRows(@NonNull PixelSpans source, int left, int top, int right, int bottom, boolean elliptical, int step)
+            throws IllegalArgumentException{
+        this(source, left, top, right, bottom, elliptical, 0, 0, step);
+        if(left < 0 || top < 0 || right > source.getWidth() || bottom > source.getHeight() || left >= right || top >= bottom)
+            throw new IllegalArgumentException("Invalid region [" + left + ", " + top + ", " + right + ", " + bottom + "] of "
+                    + source.getWidth() + "x" + source.getHeight());
+        if(step < 1)
+            throw new IllegalArgumentException("Invalid step " + step);
+    }
+
+    private RegionPixelRows(PixelSpans source, int left, int top, int right, int bottom, boolean elliptical, int x0, int y0, int step) {
+        mSource = source;
+        mLeft = left;
+        mTop = top;
+        mRight = right;
+        mBottom = bottom;
+        mElliptical = elliptical;
+        mX0 = x0;
+        mY0 = y0;
+        mStep = step;
+    }
+
+    @Override
+    public PixelRows lattice(int x0, int y0, int step) {
+        if(step < 1 || x0 < 0 || y0 < 0 || x0 >= step || y0 >= step)
+            throw new IllegalArgumentException("Invalid lattice " + x0 + ", " + y0 + " step " + step);
+        return new RegionPixelRows(mSource, mLeft, mTop, mRight, mBottom, mElliptical, x0, y0, step);
+    }
+
+    @Override
+    public int getRowsCount() {
+        return Math.max(0, (mBottom - mTop - mY0 + mStep - 1) / mStep);
+    }
+
+    /**
+     * @return amount of pixels in the widest row
+     */
+    @Override
+    public int getRowWidth() {
+        return Math.max(0, (mRight - mLeft - mX0 + mStep - 1) / mStep);
+    }
+
+    @Override
+    public int getPixelsCount() {
+        if(!mElliptical)
+            return getRowsCount() * getRowWidth();
+        int[] span = new int[2];
+        int count = 0;
+        for(int row = 0, rows = getRowsCount(); row < rows; row++) {
+            spanOf(mTop + mY0 + row * mStep, span);
+            if(span[1] > span[0])
+                count += (span[1] - span[0] + mStep - 1) / mStep;
+        }
+        return count;
+    }
+
+    @Override
+    public void countRows(int fromRow, int toRow, @NonNull ColorCounter counter) {
+        int[] span = new int[2];
+        for(int row = fromRow; row < toRow; row++) {
+            int y = mTop + mY0 + row * mStep;
+            spanOf(y, span);
+            if(span[1] > span[0])
+                mSource.countSpan(y, span[0], span[1], mStep, counter);
+        }
+    }
+
+    // Helper function, fills span with the first counted pixel and exclusive end of the row, empty span has end not above start
+    private void spanOf(int y, int[] span){
+        int from = mLeft;
+        int to = mRight;
+        if(mElliptical) {
+            //Pixel is counted if its center is inside the ellipse
+            double radiusX = (mRight - mLeft) / 2.0;
+            double radiusY = (mBottom - mTop) / 2.0;
+            double dy = (y + 0.5 - (mTop + radiusY)) / radiusY;
+            if(dy * dy > 1) {
+                span[0] = span[1] = 0;
+                return;
+            }
+            double half = radiusX * Math.sqrt(1 - dy * dy);
+            double centerX = mLeft + radiusX;
+            from = Math.max(from, (int) Math.ceil(centerX - half - 0.5));
+            to = Math.min(to, (int) Math.floor(centerX + half - 0.5) + 1);
+        }
+        //Aligning the first pixel to the lattice columns
+        int first = mLeft + mX0;
+        if(from > first)
+            first += (from - first + mStep - 1) / mStep * mStep;
+        span[0] = first;
+        span[1] = to;
+    }
+}
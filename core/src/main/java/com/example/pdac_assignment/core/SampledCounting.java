@@ -0,0 +1,121 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Counting of a stratified pixels sample with confidence based early termination.
+ * The image is split into step x step cells, every pass counts a single pixel of every cell
+ * (the same random offset within all the cells), so each pass is a sample spread evenly over the whole image.
+ * After every pass the shares of the top colors are bounded by a normal approximation confidence interval,
+ * counting stops as soon as the ranking of the top colors is settled. When all the passes are done the result is exact
+ */
+public final class SampledCounting {
+    //Passes counted before the ranking is checked for the first time
+    private static final int MIN_PASSES = 2;
+
+    private SampledCounting(){
+    }
+
+    // Sampled counting result
+    public static class Result{
+        //Counts of sampled pixels
+        public final ColorCounter counter;
+        public final int sampledCount;
+        //Amount of all the image pixels
+        public final int populationCount;
+        public final int passes;
+
+        Result(ColorCounter counter, int sampledCount, int populationCount, int passes) {
+            this.counter = counter;
+            this.sampledCount = sampledCount;
+            this.populationCount = populationCount;
+            this.passes = passes;
+        }
+    }
+
+    /**
+     * Counts pixels passes until the top colors ranking is settled
+     * @param lattice full resolution pixel source
+     * @param step cells size, up to step * step passes are counted
+     * @param topK amount of top colors which ranking is to be settled
+     * @param z confidence interval z-score (1.96 for 95%)
+     * @param precision share error (0..1) below which neighbour colors are considered settled even if their intervals overlap
+     * @param parallelism amount of counting threads, 1 for sequential counting
+     * @param quantization quantization of parallel workers counters, null for exact colors
+     * @param counter counter the sampled pixels are counted into
+     * @return
+     */
+    public static Result count(@NonNull PixelLattice lattice, int step, int topK, double z, double precision,
+                               int parallelism, Quantization quantization, @NonNull ColorCounter counter){
+        if(step < 1)
+            throw new IllegalArgumentException("Sampling step must be positive: " + step);
+        PixelRows all = lattice.lattice(0, 0, 1);
+        int population = all.getPixelsCount();
+        int[] offsets = shuffledOffsets(step);
+        int sampled = 0;
+        int passes = 0;
+        while (passes < offsets.length) {
+            int offset = offsets[passes++];
+            PixelRows rows = lattice.lattice(offset % step, offset / step, step);
+            ColorCounting.count(rows, parallelism, quantization, counter);
+            sampled += rows.getPixelsCount();
+            if(passes >= MIN_PASSES && isRankingSettled(counter, sampled, population, topK, z, precision))
+                break;
+        }
+        return new Result(counter, sampled, population, passes);
+    }
+
+    /**
+     * Estimated error of a color share out of sampled counts (confidence interval half width),
+     * finite population correction makes it 0 once the whole population is counted
+     * @param count sampled pixels of the color
+     * @param sampledCount
+     * @param populationCount
+     * @param z confidence interval z-score
+     * @return share error 0..1
+     */
+    public static double shareError(int count, int sampledCount, int populationCount, double z){
+        if(sampledCount <= 0 || sampledCount >= populationCount)
+            return 0;
+        double share = count / (double) sampledCount;
+        double correction = (populationCount - sampledCount) / (double) (populationCount - 1);
+        return z * Math.sqrt(share * (1 - share) / sampledCount * correction);
+    }
+
+    // Helper function, every pair of neighbour top colors has to be separated by confidence intervals (or precise enough)
+    private static boolean isRankingSettled(ColorCounter counter, int sampled, int population, int topK, double z, double precision){
+        long[] top = ColorCounting.topColors(counter, topK + 1);
+        for(int i = 0; i + 1 < top.length; i++) {
+            int count = TopColorsHeap.countOf(top[i]);
+            int nextCount = TopColorsHeap.countOf(top[i + 1]);
+            double error = shareError(count, sampled, population, z);
+            double nextError = shareError(nextCount, sampled, population, z);
+            boolean separated = (count - nextCount) / (double) sampled > error + nextError;
+            if(!separated && Math.max(error, nextError) > precision)
+                return false;
+        }
+        return true;
+    }
+
+    // Helper function, cell offsets (y * step + x) in random order
+    private static int[] shuffledOffsets(int step){
+        int[] offsets = new int[step * step];
+        for(int i = 0; i < offsets.length; i++)
+            offsets[i] = i;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i = offsets.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = offsets[i];
+            offsets[i] = offsets[j];
+            offsets[j] = tmp;
+        }
+        return offsets;
+    }
+
+    static void checkLattice(int x0, int y0, int step){
+        if(step < 1 || x0 < 0 || x0 >= step || y0 < 0 || y0 >= step)
+            throw new IllegalArgumentException("Invalid lattice offset " + x0 + "," + y0 + " step " + step);
+    }
+}
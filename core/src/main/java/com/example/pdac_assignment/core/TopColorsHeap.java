@@ -0,0 +1,89 @@
+package com.example.pdac_assignment.core;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap that selects K most popular colors out of counting table entries.
+ * Entries are packed into a long (count in the high half, color in the low half),
+ * so ordering by count (ties by color) is a plain long comparison and nothing is allocated per entry
+ */
+public class TopColorsHeap implements ColorCounter.EntryVisitor {
+    private final long[] mHeap;
+    private int mSize = 0;
+
+    /**
+     * @param k amount of colors to keep
+     */
+    public TopColorsHeap(int k){
+        mHeap = new long[Math.max(k, 0)];
+    }
+
+    @Override
+    public void visit(int color, int count) {
+        if(mHeap.length == 0)
+            return;
+        long entry = pack(color, count);
+        if(mSize < mHeap.length) {
+            mHeap[mSize] = entry;
+            siftUp(mSize++);
+        }else if(entry > mHeap[0]) {
+            mHeap[0] = entry;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return selected entries ordered from the most popular color
+     */
+    public long[] toSortedArray(){
+        long[] entries = Arrays.copyOf(mHeap, mSize);
+        Arrays.sort(entries);
+        reverse(entries);
+        return entries;
+    }
+
+    public static long pack(int color, int count){
+        return ((long) count << 32) | (color & 0xffffffffL);
+    }
+    public static int colorOf(long entry){
+        return (int) entry;
+    }
+    public static int countOf(long entry){
+        return (int) (entry >>> 32);
+    }
+
+    public static void reverse(long[] entries){
+        for(int i = 0, j = entries.length - 1; i < j; i++, j--) {
+            long tmp = entries[i];
+            entries[i] = entries[j];
+            entries[j] = tmp;
+        }
+    }
+
+    private void siftUp(int i){
+        long entry = mHeap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if(mHeap[parent] <= entry)
+                break;
+            mHeap[i] = mHeap[parent];
+            i = parent;
+        }
+        mHeap[i] = entry;
+    }
+
+    private void siftDown(int i){
+        long entry = mHeap[i];
+        int half = mSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if(child + 1 < mSize && mHeap[child + 1] < mHeap[child])
+                child++;
+            if(entry <= mHeap[child])
+                break;
+            mHeap[i] = mHeap[child];
+            i = child;
+        }
+        mHeap[i] = entry;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.pdac_assignment.core;
+
+/**
+ * YUV -> ARGB pixel conversion shared by YUV pixel sources
+ */
+public final class YuvConversion {
+    private YuvConversion(){
+    }
+
+    /**
+     * Converts a single Yuv pixel to ARGB.
+     * Uses the same full range BT.601 (JFIF) coefficients as JPEG encoding of YuvImage,
+     * calculated in 16 bit fixed point to avoid floating point math per pixel
+     * @param y luma 0..255
+     * @param u Cb 0..255
+     * @param v Cr 0..255
+     * @return opaque ARGB color
+     */
+    public static int toArgb(int y, int u, int v) {
+        u -= 128;
+        v -= 128;
+        int luma = (y << 16) + (1 << 15);
+        int r = (luma + 91881 * v) >> 16;
+        int g = (luma - 22554 * u - 46802 * v) >> 16;
+        int b = (luma + 116130 * u) >> 16;
+        return 0xff000000
+                | (clampChannel(r) << 16)
+                | (clampChannel(g) << 8)
+                | clampChannel(b);
+    }
+
+    private static int clampChannel(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Rows of 4:2:0 YUV frame held in a byte array (NV21, YV12), every step-th pixel of every step-th row is converted
+ */
+public class YuvPixelRows implements PixelRows, PixelLattice, PixelSpans {
+    private final byte[] mData;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mYStride;
+    private final int mUvStride;
+    private final int mUvPixelStride;
+    private final int mVOffset;
+    private final int mUOffset;
+    private final int mStep;
+    //Offsets of the first converted pixel
+    private final int mX0;
+    private final int mY0;
+
+    private YuvPixelRows(@NonNull byte[] data, int width, int height, int yStride, int uvStride, int uvPixelStride, int vOffset, int uOffset,
+                         int x0, int y0, int step) {
+        mData = data;
+        mWidth = width;
+        mHeight = height;
+        mYStride = yStride;
+        mUvStride = uvStride;
+        mUvPixelStride = uvPixelStride;
+        mVOffset = vOffset;
+        mUOffset = uOffset;
+        mX0 = x0;
+        mY0 = y0;
+        mStep = step;
+    }
+
+    /**
+     * Creates rows of NV21 frame: full Y plane followed by interleaved V/U plane
+     * @param data
+     * @param width
+     * @param height
+     * @param step subsampling step
+     * @return
+     * @throws IllegalArgumentException
+     */
+    public static YuvPixelRows nv21(byte[] data, int width, int height, int step) throws IllegalArgumentException{
+        int vOffset = width * height;
+        return create(data, width, height, width, width, 2, vOffset, vOffset + 1, step);
+    }
+
+    /**
+     * Creates rows of YV12 frame: full Y plane followed by V and U planes, each row is aligned to 16 bytes
+     * @param data
+     * @param width
+     * @param height
+     * @param step subsampling step
+     * @return
+     * @throws IllegalArgumentException
+     */
+    public static YuvPixelRows yv12(byte[] data, int width, int height, int step) throws IllegalArgumentException{
+        int yStride = alignTo16(width);
+        int uvStride = alignTo16(yStride / 2);
+        int vOffset = yStride * height;
+        return create(data, width, height, yStride, uvStride, 1, vOffset, vOffset + uvStride * (height / 2), step);
+    }
+
+    // Helper function, frame data is validated to hold the whole frame
+    private static YuvPixelRows create(byte[] data, int width, int height, int yStride, int uvStride, int uvPixelStride,
+                                       int vOffset, int uOffset, int step) throws IllegalArgumentException{
+        if(width <= 0 || height <= 0 || step < 1)
+            throw new IllegalArgumentException("Invalid frame geometry " + width + "x" + height + " step " + step);
+        //The last chroma sample is the farthest byte read
+        int requiredLength = uOffset + uvStride * ((height - 1) / 2) + uvPixelStride * ((width - 1) / 2) + 1;
+        if(data == null || data.length < requiredLength)
+            throw new IllegalArgumentException("Frame data is too short for " + width + "x" + height);
+        return new YuvPixelRows(data, width, height, yStride, uvStride, uvPixelStride, vOffset, uOffset, 0, 0, step);
+    }
+
+    private static int alignTo16(int value){
+        return (value + 15) & ~15;
+    }
+
+    @Override
+    public YuvPixelRows lattice(int x0, int y0, int step) {
+        SampledCounting.checkLattice(x0, y0, step);
+        return new YuvPixelRows(mData, mWidth, mHeight, mYStride, mUvStride, mUvPixelStride, mVOffset, mUOffset, x0, y0, step);
+    }
+
+    @Override
+    public int getRowsCount() {
+        return (mHeight - mY0 + mStep - 1) / mStep;
+    }
+
+    @Override
+    public int getRowWidth() {
+        return (mWidth - mX0 + mStep - 1) / mStep;
+    }
+
+    @Override
+    public int getPixelsCount() {
+        return getRowsCount() * getRowWidth();
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void countRows(int fromRow, int toRow, @NonNull ColorCounter counter) {
+        for(int row = fromRow; row < toRow; row++)
+            countSpan(mY0 + row * mStep, mX0, mWidth, mStep, counter);
+    }
+
+    @Override
+    public void countSpan(int y, int fromX, int toX, int step, @NonNull ColorCounter counter) {
+        byte[] data = mData;
+        int[] pixels = PixelsBuffer.obtain((toX - fromX + step - 1) / step);
+        int yRow = y * mYStride;
+        int uvRow = (y >> 1) * mUvStride;
+        int n = 0;
+        for(int x = fromX; x < toX; x += step) {
+            int uv = uvRow + (x >> 1) * mUvPixelStride;
+            pixels[n++] = YuvConversion.toArgb(data[yRow + x] & 0xff, data[mUOffset + uv] & 0xff, data[mVOffset + uv] & 0xff);
+        }
+        counter.incrementAll(pixels, 0, n);
+    }
+}
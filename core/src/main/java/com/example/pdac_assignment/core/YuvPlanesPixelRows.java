@@ -0,0 +1,109 @@
+package com.example.pdac_assignment.core;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rows of 4:2:0 YUV planes (YUV_420_888) read in place with absolute gets, row and pixel strides are honored.
+ * Every step-th pixel of every step-th row is converted
+ */
+public class YuvPlanesPixelRows implements PixelRows, PixelLattice, PixelSpans {
+    private final ByteBuffer mYPlane;
+    private final ByteBuffer mUPlane;
+    private final ByteBuffer mVPlane;
+    private final int mYRowStride;
+    private final int mYPixelStride;
+    private final int mUvRowStride;
+    private final int mUvPixelStride;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStep;
+    //Offsets of the first converted pixel
+    private final int mX0;
+    private final int mY0;
+    //Absolute reads are relative to the buffer start, planes may be handed over with non zero position
+    private final int mYBase;
+    private final int mUBase;
+    private final int mVBase;
+
+    public YuvPlanesPixelRows(@NonNull ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                              @NonNull ByteBuffer uPlane, @NonNull ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                              int width, int height, int step) {
+        this(yPlane, yRowStride, yPixelStride, uPlane, vPlane, uvRowStride, uvPixelStride, width, height, 0, 0, step);
+    }
+
+    private YuvPlanesPixelRows(@NonNull ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                               @NonNull ByteBuffer uPlane, @NonNull ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                               int width, int height, int x0, int y0, int step) {
+        mYPlane = yPlane;
+        mUPlane = uPlane;
+        mVPlane = vPlane;
+        mYRowStride = yRowStride;
+        mYPixelStride = yPixelStride;
+        mUvRowStride = uvRowStride;
+        mUvPixelStride = uvPixelStride;
+        mWidth = width;
+        mHeight = height;
+        mX0 = x0;
+        mY0 = y0;
+        mStep = step;
+        mYBase = yPlane.position();
+        mUBase = uPlane.position();
+        mVBase = vPlane.position();
+    }
+
+    @Override
+    public YuvPlanesPixelRows lattice(int x0, int y0, int step) {
+        SampledCounting.checkLattice(x0, y0, step);
+        //Planes positions are never moved (absolute gets only), so lattice bases match this rows ones
+        return new YuvPlanesPixelRows(mYPlane, mYRowStride, mYPixelStride, mUPlane, mVPlane,
+                mUvRowStride, mUvPixelStride, mWidth, mHeight, x0, y0, step);
+    }
+
+    @Override
+    public int getRowsCount() {
+        return (mHeight - mY0 + mStep - 1) / mStep;
+    }
+
+    @Override
+    public int getRowWidth() {
+        return (mWidth - mX0 + mStep - 1) / mStep;
+    }
+
+    @Override
+    public int getPixelsCount() {
+        return getRowsCount() * getRowWidth();
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void countRows(int fromRow, int toRow, @NonNull ColorCounter counter) {
+        for(int row = fromRow; row < toRow; row++)
+            countSpan(mY0 + row * mStep, mX0, mWidth, mStep, counter);
+    }
+
+    @Override
+    public void countSpan(int y, int fromX, int toX, int step, @NonNull ColorCounter counter) {
+        int[] pixels = PixelsBuffer.obtain((toX - fromX + step - 1) / step);
+        int yRow = mYBase + y * mYRowStride;
+        int uvRow = (y >> 1) * mUvRowStride;
+        int n = 0;
+        for(int x = fromX; x < toX; x += step) {
+            int uv = uvRow + (x >> 1) * mUvPixelStride;
+            pixels[n++] = YuvConversion.toArgb(mYPlane.get(yRow + x * mYPixelStride) & 0xff,
+                    mUPlane.get(mUBase + uv) & 0xff,
+                    mVPlane.get(mVBase + uv) & 0xff);
+        }
+        counter.incrementAll(pixels, 0, n);
+    }
+}
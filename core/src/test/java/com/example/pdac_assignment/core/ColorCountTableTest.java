@@ -0,0 +1,75 @@
+package com.example.pdac_assignment.core;
+
+import static org.junit.Assert.*;
+
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Local unit tests of primitive color counting table
+ */
+public class ColorCountTableTest {
+    @Test
+    public void testIncrement(){
+        ColorCountTable table = new ColorCountTable();
+        table.increment(0xff000000);
+        table.increment(0xff000000);
+        table.increment(0);
+        table.add(0xffffffff, 5);
+        assertEquals(3, table.size());
+        assertEquals(2, table.get(0xff000000));
+        assertEquals(1, table.get(0));
+        assertEquals(5, table.get(0xffffffff));
+        assertEquals(0, table.get(0xff00ff00));
+    }
+
+    /**
+     * Comparing table against HashMap counting while the table is resized many times
+     */
+    @Test
+    public void testResize(){
+        ColorCountTable table = new ColorCountTable(1);
+        HashMap<Integer,Integer> map = new HashMap<>();
+        Random random = new Random(7);
+        for(int i = 0; i < 200000; i++) {
+            int color = 0xff000000 | random.nextInt(0x10000);
+            table.increment(color);
+            Integer count = map.get(color);
+            map.put(color, count == null ? 1 : count + 1);
+        }
+        assertEquals(map.size(), table.size());
+        final int[] total = {0};
+        table.forEach((color, count) -> {
+            assertEquals(map.get(color).intValue(), count);
+            total[0] += count;
+        });
+        assertEquals(200000, total[0]);
+    }
+
+    @Test
+    public void testIncrementAll(){
+        ColorCountTable table = new ColorCountTable();
+        int[] colors = {1, 1, 1, 2, 1, 3, 3, 2, 9};
+        table.incrementAll(colors, 1, 7);
+        assertEquals(3, table.size());
+        assertEquals(3, table.get(1));
+        assertEquals(2, table.get(2));
+        assertEquals(2, table.get(3));
+        assertEquals(0, table.get(9));
+    }
+
+    @Test
+    public void testClear(){
+        ColorCountTable table = new ColorCountTable();
+        for(int i = 0; i < 5000; i++)
+            table.increment(i);
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.get(10));
+        table.increment(10);
+        assertEquals(1, table.get(10));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.pdac_assignment.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local unit tests of pixel sources counting
+ */
+public class ColorCountingTest {
+    @Test
+    public void testArgbRows(){
+        int[] pixels = {0xff000000, 0xff000000, 0xffffffff, 0xff0000ff, 0xff0000ff, 0xff0000ff};
+        ColorCountTable table = new ColorCountTable();
+        ColorCounting.count(new ArgbPixelRows(pixels, 3, 2), 1, null, table);
+        assertEquals(3, table.size());
+        assertEquals(3, table.get(0xff0000ff));
+
+        long[] top = ColorCounting.topColors(table, 2);
+        assertEquals(2, top.length);
+        assertEquals(0xff0000ff, TopColorsHeap.colorOf(top[0]));
+        assertEquals(2, TopColorsHeap.countOf(top[1]));
+    }
+
+    @Test
+    public void testNv21Rows(){
+        int width = 8, height = 4;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Arrays.fill(nv21, (byte) 128);
+        Arrays.fill(nv21, 0, width, (byte) 255);
+        ColorCountTable table = new ColorCountTable();
+        ColorCounting.count(YuvPixelRows.nv21(nv21, width, height, 1), 1, null, table);
+        assertEquals(width, table.get(0xffffffff));
+        assertEquals(width * (height - 1), table.get(0xff808080));
+
+        YuvPixelRows subsampled = YuvPixelRows.nv21(nv21, width, height, 2);
+        assertEquals(2, subsampled.getRowsCount());
+        assertEquals(4, subsampled.getRowWidth());
+        try {
+            YuvPixelRows.nv21(new byte[width * height], width, height, 1);
+            fail("Short frame must be rejected");
+        }catch (IllegalArgumentException e){
+            //expected
+        }
+    }
+
+    @Test
+    public void testParallelCounting(){
+        int width = 320, height = 240;
+        int[] pixels = new int[width * height];
+        Random random = new Random(3);
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | random.nextInt(1 << 12);
+        ArgbPixelRows rows = new ArgbPixelRows(pixels, width, height);
+        for(Quantization quantization : new Quantization[]{null, Quantization.RGB444}) {
+            ColorCounter sequential = ColorCounting.obtainCounter(quantization);
+            ColorCounting.count(rows, 1, quantization, sequential);
+            sequential = ColorCounting.compact(sequential);
+            ColorCounter parallel = ColorCounting.obtainCounter(quantization);
+            ColorCounting.count(rows, 4, quantization, parallel);
+            assertArrayEquals(ColorCounting.topColors(sequential, 100), ColorCounting.topColors(parallel, 100));
+        }
+    }
+
+    @Test
+    public void testConcurrentParallelCounting() throws InterruptedException {
+        int width = 640, height = 480;
+        int[] pixels = new int[width * height];
+        Random random = new Random(7);
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | random.nextInt(1 << 12);
+        final ArgbPixelRows rows = new ArgbPixelRows(pixels, width, height);
+        ColorCountTable sequential = new ColorCountTable();
+        ColorCounting.count(rows, 1, null, sequential);
+        final long[] expected = ColorCounting.topColors(sequential, 100);
+        //Jobs of both threads share the pool of the same parallelism and the same kind of worker counters
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[2];
+        for(int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for(int i = 0; i < 100; i++) {
+                    ColorCountTable table = new ColorCountTable();
+                    ColorCounting.count(rows, 4, null, table);
+                    if(!Arrays.equals(expected, ColorCounting.topColors(table, 100)))
+                        failures.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads)
+            thread.join();
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void testLatticeCoverage(){
+        int width = 13, height = 7, step = 3;
+        int[] pixels = new int[width * height];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | (i % 5);
+        ArgbPixelRows rows = new ArgbPixelRows(pixels, width, height);
+        ColorCountTable full = new ColorCountTable();
+        ColorCounting.count(rows, 1, null, full);
+        ColorCountTable lattices = new ColorCountTable();
+        int counted = 0;
+        for(int y0 = 0; y0 < step; y0++)
+            for(int x0 = 0; x0 < step; x0++) {
+                PixelRows lattice = rows.lattice(x0, y0, step);
+                ColorCounting.count(lattice, 1, null, lattices);
+                counted += lattice.getRowsCount() * lattice.getRowWidth();
+            }
+        assertEquals(width * height, counted);
+        assertArrayEquals(ColorCounting.topColors(full, 5), ColorCounting.topColors(lattices, 5));
+
+        assertEquals(0, SampledCounting.shareError(10, 100, 100, 1.96), 0);
+        assertEquals(1.96 * Math.sqrt(0.25 / 100 * 900 / 999.0), SampledCounting.shareError(50, 100, 1000, 1.96), 1e-9);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.pdac_assignment.core;
+
+import static org.junit.Assert.*;
+
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Local unit tests of perceptual (HSV, CIELAB) binning
+ */
+public class ColorSpaceColorCounterTest {
+    @Test
+    public void testBins(){
+        assertEquals(18 * 4 * 4, ColorSpace.HSV.getBinsCount());
+        assertEquals(10 * 14 * 14, ColorSpace.LAB.getBinsCount());
+        assertEquals(0x7fff, ColorSpace.cellOf(0xffffffff));
+        assertEquals(0x7c00, ColorSpace.cellOf(0xfff80000));
+        assertEquals(0, ColorSpace.cellOf(0xff070707));
+        for(ColorSpace colorSpace : ColorSpace.values()) {
+            short[] table = colorSpace.getTable();
+            assertEquals(1 << 15, table.length);
+            assertSame(table, colorSpace.getTable());
+            for(short bin : table)
+                assertTrue(bin >= 0 && bin < colorSpace.getBinsCount());
+            //Shades of a perceptual color share the bin, distinct hues do not
+            assertEquals(colorSpace.binOf(0xffc02828), colorSpace.binOf(0xffc82c28));
+            assertNotEquals(colorSpace.binOf(0xffc02828), colorSpace.binOf(0xff28c028));
+            assertNotEquals(colorSpace.binOf(0xff000000), colorSpace.binOf(0xffffffff));
+        }
+        //Grays of any tint below the saturation level share the hue 0 bins
+        assertEquals(ColorSpace.HSV.binOf(0xff808080), ColorSpace.HSV.binOf(0xff848088));
+    }
+
+    @Test
+    public void testCentroids(){
+        ColorSpaceColorCounter counter = new ColorSpaceColorCounter(ColorSpace.LAB);
+        counter.incrementAll(new int[]{0xffc02828, 0xffc82c28, 0xffffffff}, 0, 3);
+        counter.add(0xffc02828, 2);
+        assertEquals(2, counter.size());
+        final int[] total = {0};
+        counter.forEach((color, count) -> {
+            if(color != 0xffffffff) {
+                //Mean of 3 x (c0, 28, 28) and (c8, 2c, 28)
+                assertEquals(0xffc22928, color);
+                assertEquals(4, count);
+            }
+            total[0] += count;
+        });
+        assertEquals(5, total[0]);
+        assertEquals(4, counter.toTable().get(0xffc22928));
+        counter.clear();
+        assertEquals(0, counter.size());
+    }
+
+    @Test
+    public void testMerging(){
+        Random random = new Random(5);
+        int[] colors = new int[4096];
+        for(int i = 0; i < colors.length; i++)
+            colors[i] = 0xff000000 | random.nextInt(0x1000000);
+        ColorSpaceColorCounter expected = new ColorSpaceColorCounter(ColorSpace.HSV);
+        expected.incrementAll(colors, 0, colors.length);
+
+        //Counters of the same space are summed bin by bin, other counters are binned color by color
+        ColorSpaceColorCounter half = new ColorSpaceColorCounter(ColorSpace.HSV);
+        half.incrementAll(colors, 0, colors.length / 2);
+        ColorCountTable table = new ColorCountTable();
+        table.incrementAll(colors, colors.length / 2, colors.length / 2);
+        ColorSpaceColorCounter merged = new ColorSpaceColorCounter(ColorSpace.HSV);
+        merged.addAll(half);
+        merged.addAll(table);
+        assertEquals(expected.size(), merged.size());
+        for(int bin = 0; bin < ColorSpace.HSV.getBinsCount(); bin++)
+            assertEquals(expected.centroidOf(bin), merged.centroidOf(bin));
+
+        ColorSpaceColorCounter reused = (ColorSpaceColorCounter) ColorCounting.obtainColorSpaceCounter(ColorSpace.HSV);
+        reused.incrementAll(colors, 0, colors.length);
+        assertSame(reused, ColorCounting.obtainColorSpaceCounter(ColorSpace.HSV));
+        assertEquals(0, reused.size());
+    }
+
+    @Test
+    public void testParallelCounting(){
+        int width = 320, height = 240;
+        int[] pixels = new int[width * height];
+        Random random = new Random(9);
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        ArgbPixelRows rows = new ArgbPixelRows(pixels, width, height);
+        ColorSpaceColorCounter sequential = new ColorSpaceColorCounter(ColorSpace.LAB);
+        ColorCounting.count(rows, 1, null, sequential);
+        //Workers bin the original pixels, quantization of workers counters does not apply
+        ColorSpaceColorCounter parallel = new ColorSpaceColorCounter(ColorSpace.LAB);
+        ColorCounting.count(rows, 4, Quantization.RGB444, parallel);
+        assertEquals(sequential.size(), parallel.size());
+        for(int bin = 0; bin < ColorSpace.LAB.getBinsCount(); bin++)
+            assertEquals(sequential.centroidOf(bin), parallel.centroidOf(bin));
+        assertArrayEquals(ColorCounting.topColors(sequential, 20), ColorCounting.topColors(parallel, 20));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.pdac_assignment.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests of grid counting
+ */
+public class GridColorCounterTest {
+    @Test
+    public void testTiles(){
+        //Every pixel color is its column, 8 columns wide stripes of 4 colors
+        int width = 32, height = 10;
+        int[] pixels = new int[width * height];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | ((i % width) / 8 * 0x40) << 16;
+        ArgbPixelRows image = new ArgbPixelRows(pixels, width, height);
+        GridColorCounter grid = new GridColorCounter(4, 2, Quantization.RGB444);
+        grid.count(image, 1);
+        int total = 0;
+        for(int row = 0; row < 2; row++)
+            for(int column = 0; column < 4; column++) {
+                long[] top = ColorCounting.topColors(grid.getTile(column, row), 2);
+                assertEquals(1, top.length);
+                assertEquals(Quantization.RGB444.quantize(0xff000000 | (column * 0x40) << 16), TopColorsHeap.colorOf(top[0]));
+                assertEquals(40, TopColorsHeap.countOf(top[0]));
+                assertEquals(40, grid.getTilePixelsCount(column, row));
+                total += grid.getTilePixelsCount(column, row);
+            }
+        assertEquals(width * height, total);
+
+        //Subsampled rectangle, stripes of 2 columns (second and third stripes) in a single tile row
+        grid = new GridColorCounter(2, 1, Quantization.RGB444);
+        grid.count(image, 8, 2, 24, 9, 3);
+        assertEquals(3 * 3, grid.getTilePixelsCount(0, 0));
+        assertEquals(3 * 3, grid.getTilePixelsCount(1, 0));
+        assertEquals(1, grid.getTile(0, 0).size());
+        assertEquals(1, grid.getTile(1, 0).size());
+        grid.clear();
+        assertEquals(0, grid.getTilePixelsCount(0, 0));
+        assertEquals(0, grid.getTile(1, 0).size());
+    }
+}
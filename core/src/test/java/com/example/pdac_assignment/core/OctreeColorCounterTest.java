@@ -0,0 +1,63 @@
+package com.example.pdac_assignment.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Local unit tests of octree counting backend
+ */
+public class OctreeColorCounterTest {
+    @Test
+    public void testExactWithinBudget(){
+        OctreeColorCounter counter = new OctreeColorCounter(8);
+        int[] pixels = {0xff000000, 0xff000000, 0xffffffff, 0xff0000ff, 0xff0000ff, 0xff0000ff, 0xff123456};
+        counter.incrementAll(pixels, 0, pixels.length);
+        counter.add(0xff123456, 4);
+        assertEquals(4, counter.size());
+        ColorCountTable table = counter.toTable();
+        assertEquals(2, table.get(0xff000000));
+        assertEquals(1, table.get(0xffffffff));
+        assertEquals(3, table.get(0xff0000ff));
+        assertEquals(5, table.get(0xff123456));
+    }
+
+    @Test
+    public void testBudget(){
+        OctreeColorCounter counter = new OctreeColorCounter(16);
+        Random random = new Random(7);
+        int[] pixels = new int[64 * 1024];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        for(int pass = 0; pass < 2; pass++) {
+            counter.clear();
+            counter.incrementAll(pixels, 0, pixels.length);
+            assertTrue(counter.size() <= 16);
+            final int[] total = {0};
+            counter.forEach(new ColorCounter.EntryVisitor() {
+                @Override
+                public void visit(int color, int count) {
+                    total[0] += count;
+                }
+            });
+            assertEquals(pixels.length, total[0]);
+        }
+    }
+
+    @Test
+    public void testShadesMerge(){
+        OctreeColorCounter counter = new OctreeColorCounter(2);
+        for(int i = 0; i < 8; i++) {
+            counter.add(0xff000000 | ((200 + i) << 16) | (20 << 8) | 20, 100);
+            counter.add(0xff000000 | (20 << 16) | (20 << 8) | (100 + i), 50);
+        }
+        long[] top = ColorCounting.topColors(counter, 2);
+        assertEquals(2, top.length);
+        assertEquals(800, TopColorsHeap.countOf(top[0]));
+        assertEquals(0xffcc1414, TopColorsHeap.colorOf(top[0]));
+        assertEquals(400, TopColorsHeap.countOf(top[1]));
+        assertEquals(0xff141468, TopColorsHeap.colorOf(top[1]));
+    }
+}
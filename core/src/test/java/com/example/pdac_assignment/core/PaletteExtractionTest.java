@@ -0,0 +1,53 @@
+package com.example.pdac_assignment.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests of palette extraction
+ */
+public class PaletteExtractionTest {
+    @Test
+    public void testShadesMerge(){
+        ColorCountTable table = new ColorCountTable();
+        //Two surfaces, each of several close shades
+        for(int i = 0; i < 8; i++) {
+            table.add(0xff000000 | ((200 + i) << 16) | (20 << 8) | 20, 100);
+            table.add(0xff000000 | (20 << 16) | (20 << 8) | (100 + i), 50);
+        }
+        long[] palette = PaletteExtraction.extract(table, 2, 4, Long.MAX_VALUE);
+        assertEquals(2, palette.length);
+        assertEquals(800, TopColorsHeap.countOf(palette[0]));
+        assertEquals(400, TopColorsHeap.countOf(palette[1]));
+        int red = TopColorsHeap.colorOf(palette[0]);
+        assertEquals(204, (red >> 16) & 0xff, 4);
+        assertEquals(20, red & 0xff, 4);
+        int blue = TopColorsHeap.colorOf(palette[1]);
+        assertEquals(104, blue & 0xff, 4);
+    }
+
+    @Test
+    public void testCaps(){
+        ColorCountTable table = new ColorCountTable();
+        int total = 0;
+        for(int color = 0; color < 4096; color++) {
+            table.add(0xff000000 | (color * 0x0f0f0f & 0xffffff), color % 7 + 1);
+            total += color % 7 + 1;
+        }
+        for(int iterations = 0; iterations < 3; iterations++) {
+            long[] palette = PaletteExtraction.extract(table, 16, iterations, 0);
+            assertTrue(palette.length <= 16);
+            int sum = 0;
+            for(int i = 0; i < palette.length; i++) {
+                sum += TopColorsHeap.countOf(palette[i]);
+                if(i > 0)
+                    assertTrue(TopColorsHeap.countOf(palette[i - 1]) >= TopColorsHeap.countOf(palette[i]));
+            }
+            assertEquals(total, sum);
+        }
+        //Exhausted time budget abandons the refinement, median cut means are kept
+        assertArrayEquals(PaletteExtraction.extract(table, 16, 0, Long.MAX_VALUE), PaletteExtraction.extract(table, 16, 3, 0));
+        assertEquals(0, PaletteExtraction.extract(new ColorCountTable(), 4, 4, Long.MAX_VALUE).length);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.pdac_assignment.core;
+
+import static org.junit.Assert.*;
+
+
+import org.junit.Test;
+
+/**
+ * Local unit tests of dense quantized color counting
+ */
+public class QuantizedColorCounterTest {
+    @Test
+    public void testBins(){
+        Quantization quantization = Quantization.RGB565;
+        assertEquals(65536, quantization.getBinsCount());
+        assertEquals(0xffff, quantization.binOf(0xffffffff));
+        assertEquals(0, quantization.binOf(0xff070307));
+        assertEquals(0xf800, quantization.binOf(0xffff0000));
+        assertEquals(0x07e0, quantization.binOf(0xff00ff00));
+        assertEquals(0x001f, quantization.binOf(0xff0000ff));
+        assertEquals(0xffffffff, quantization.colorOf(0xffff));
+        assertEquals(0xff000000, quantization.colorOf(0));
+        assertEquals(0xffff0000, quantization.colorOf(0xf800));
+        assertEquals(0xff112233, Quantization.RGB444.quantize(0xff1f2f3f));
+    }
+
+    @Test
+    public void testCounting(){
+        QuantizedColorCounter counter = new QuantizedColorCounter(Quantization.RGB444);
+        //Both shades fall into the same bin
+        counter.incrementAll(new int[]{0xff102030, 0xff1f2f3f, 0xffffffff}, 0, 3);
+        counter.add(0xff000000, 4);
+        assertEquals(3, counter.size());
+        final int[] total = {0};
+        counter.forEach((color, count) -> {
+            if(color == 0xff112233)
+                assertEquals(2, count);
+            total[0] += count;
+        });
+        assertEquals(7, total[0]);
+        assertEquals(2, counter.toTable().get(0xff112233));
+        counter.clear();
+        assertEquals(0, counter.size());
+    }
+}
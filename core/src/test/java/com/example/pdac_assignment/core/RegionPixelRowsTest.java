@@ -0,0 +1,94 @@
+package com.example.pdac_assignment.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests of region of interest rows, every pixel of the image has its own color (its index)
+ */
+public class RegionPixelRowsTest {
+    private static final int WIDTH = 21;
+    private static final int HEIGHT = 16;
+
+    @Test
+    public void testRectangle(){
+        RegionPixelRows region = new RegionPixelRows(image(), 4, 3, 13, 11, false, 2);
+        assertEquals(4, region.getRowsCount());
+        assertEquals(5, region.getRowWidth());
+        ColorCountTable table = count(region);
+        assertEquals(20, table.size());
+        assertEquals(region.getPixelsCount(), table.size());
+        for(int y = 3; y < 11; y += 2)
+            for(int x = 4; x < 13; x += 2)
+                assertEquals(1, table.get(colorOf(x, y)));
+        assertEquals(0, table.get(colorOf(5, 3)));
+    }
+
+    @Test
+    public void testRegionBounds(){
+        RegionOfInterest center = new RegionOfInterest(0.25F, 0.25F, 0.75F, 0.75F);
+        assertArrayEquals(new int[]{5, 4, 16, 12}, center.boundsOf(WIDTH, HEIGHT));
+        //Tiny region is rounded outwards to at least a pixel, even at the image edge
+        assertArrayEquals(new int[]{20, 15, 21, 16}, new RegionOfInterest(0.99F, 0.99F, 1, 1).boundsOf(WIDTH, HEIGHT));
+        try {
+            new RegionOfInterest(0.5F, 0, 0.5F, 1);
+            fail("Empty region is accepted");
+        }catch (IllegalArgumentException e){
+            //expected
+        }
+    }
+
+    @Test
+    public void testEllipse(){
+        RegionPixelRows region = new RegionPixelRows(image(), 1, 0, 21, 16, true, 1);
+        ColorCountTable table = count(region);
+        assertEquals(region.getPixelsCount(), table.size());
+        //Ellipse covers about pi / 4 of the rectangle
+        assertEquals(Math.PI / 4, table.size() / (double) (20 * 16), 0.03);
+        assertEquals(1, table.get(colorOf(11, 8)));
+        assertEquals(1, table.get(colorOf(1, 8)));
+        assertEquals(1, table.get(colorOf(11, 0)));
+        assertEquals(0, table.get(colorOf(1, 0)));
+        assertEquals(0, table.get(colorOf(20, 15)));
+        assertEquals(0, table.get(colorOf(0, 8)));
+
+        //Lattices cover every pixel of the ellipse exactly once
+        ColorCountTable lattices = new ColorCountTable();
+        int pixels = 0;
+        for(int y0 = 0; y0 < 3; y0++)
+            for(int x0 = 0; x0 < 3; x0++) {
+                PixelRows rows = region.lattice(x0, y0, 3);
+                rows.countRows(0, rows.getRowsCount(), lattices);
+                pixels += rows.getPixelsCount();
+            }
+        assertEquals(table.size(), pixels);
+        assertEquals(table.size(), lattices.size());
+        for(int y = 0; y < HEIGHT; y++)
+            for(int x = 0; x < WIDTH; x++)
+                assertEquals(table.get(colorOf(x, y)), lattices.get(colorOf(x, y)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfBounds(){
+        new RegionPixelRows(image(), 0, 0, WIDTH + 1, HEIGHT, false, 1);
+    }
+
+    private static ArgbPixelRows image(){
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for(int y = 0; y < HEIGHT; y++)
+            for(int x = 0; x < WIDTH; x++)
+                pixels[y * WIDTH + x] = colorOf(x, y);
+        return new ArgbPixelRows(pixels, WIDTH, HEIGHT);
+    }
+
+    private static int colorOf(int x, int y){
+        return 0xff000000 | (y * WIDTH + x);
+    }
+
+    private static ColorCountTable count(PixelRows rows){
+        ColorCountTable table = new ColorCountTable();
+        rows.countRows(0, rows.getRowsCount(), table);
+        return table;
+    }
+}